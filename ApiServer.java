@@ -0,0 +1,685 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclEntryPermission;
+import java.nio.file.attribute.AclEntryType;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+
+/**
+ * Headless HTTP API over the calculator and a shared {@link DatabaseHelper}, bound to the loopback interface.
+ * Connections are kept alive, so clients may pipeline requests; each request runs on its own thread and the
+ * connection pool bounds how many reach the database at once. Row results are JSON unless the client asks
+ * for CSV (?format=csv or Accept: text/csv), and query results are streamed as the server reads them.
+ * <p>
+ * Loopback alone does not keep out web pages open in a browser on the same machine, so every request needs
+ * the bearer token written (readable by the user only) to the token file at startup, must name the server
+ * as Host (defeats DNS rebinding) and must not carry an Origin header. Bodies must be application/sql or
+ * application/json, which a browser cannot send cross-origin without a preflight this server never answers.
+ *
+ * <pre>
+ * POST   /calc                     JSON array of expressions
+ * GET    /tables
+ * GET    /tables/{t}?offset=&limit=&sort=&order=desc&{column}={prefix}
+ * POST   /tables/{t}/rows          JSON object {"column": "value", ...}
+ * PUT    /tables/{t}/rows/{key}    JSON object {"column": "value", ...}
+ * DELETE /tables/{t}/rows/{key}    or DELETE /tables/{t}/rows?key=..&key=..
+ * POST   /query                    application/sql: one SELECT, streamed
+ * POST   /execute                  application/sql: SQL script, every result; X-Request-Id: {id} makes it cancellable
+ * POST   /cancel/{id}              cancels the statements of that /execute (a /query ends when its client disconnects)
+ *
+ * curl -H "Authorization: Bearer $(cat ~/.fxdb/api-token)" -H "Content-Type: application/sql" \
+ *      --data "SELECT * FROM DEPT" http://127.0.0.1:8088/query
+ * </pre>
+ */
+class ApiServer implements AutoCloseable {
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 10_000;
+    private static final int STREAM_BATCH_SIZE = 500;
+    private static final int TOKEN_BYTES = 32;
+
+    private final DatabaseHelper db;
+    private final HttpServer server;
+    private final Path tokenFile;
+    private final byte[] token;
+    // A thread per request, for the same reason as DatabaseHelper's async executor: requests mostly wait on the database.
+    private final ExecutorService requestExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "api-request");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // X-Request-Id of each running /execute -> the thread running it, so /cancel reaches only that request.
+    private final Map<String, Thread> runningRequests = new ConcurrentHashMap<>();
+    private final MetricsRegistry.Counter requests =
+            MetricsRegistry.DEFAULT.counter("api_requests_total", "Requests handled by the API server.");
+
+    // Signals a response status other than 500 together with its message.
+    private static class ApiException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // Thrown once a streamed response has failed part-way: dispatch then leaves the exchange unclosed, so the
+    // server drops the connection without the final chunk and the client sees a truncated transfer, not a
+    // short but complete-looking result.
+    private static class StreamAborted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StreamAborted(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, List<String> path) throws IOException, SQLException, ApiException;
+    }
+
+    // A fresh token per run is written to tokenFile; clients read it from there.
+    ApiServer(DatabaseHelper db, int port, Path tokenFile) throws IOException {
+        this.db = db;
+        this.tokenFile = tokenFile;
+        byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+        token = encoded.getBytes(StandardCharsets.US_ASCII);
+        writeUserOnly(tokenFile, encoded);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 64);
+        server.createContext("/calc", exchange -> dispatch(exchange, this::handleCalc));
+        server.createContext("/tables", exchange -> dispatch(exchange, this::handleTables));
+        server.createContext("/query", exchange -> dispatch(exchange, this::handleQuery));
+        server.createContext("/execute", exchange -> dispatch(exchange, this::handleExecute));
+        server.createContext("/cancel", exchange -> dispatch(exchange, this::handleCancel));
+        server.createContext("/", exchange -> dispatch(exchange, (ex, path) -> {
+            throw new ApiException(404, "No such resource: " + ex.getRequestURI().getPath());
+        }));
+        server.setExecutor(requestExecutor);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    Path getTokenFile() {
+        return tokenFile;
+    }
+
+    // Gives running exchanges a second to finish.
+    @Override
+    public void close() {
+        server.stop(1);
+        requestExecutor.shutdownNow();
+        try {
+            Files.deleteIfExists(tokenFile);
+        } catch (IOException ignored) {
+            // a stale token is useless once the server is gone
+        }
+    }
+
+    // Created with owner-only permissions from the start, so no other user can read it even briefly.
+    private static void writeUserOnly(Path file, String content) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Files.deleteIfExists(file);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+            AclFileAttributeView acl = Files.getFileAttributeView(file, AclFileAttributeView.class);
+            if (acl != null) {
+                acl.setAcl(List.of(AclEntry.newBuilder()
+                        .setType(AclEntryType.ALLOW)
+                        .setPrincipal(Files.getOwner(file))
+                        .setPermissions(EnumSet.allOf(AclEntryPermission.class))
+                        .build()));
+            }
+        }
+        Files.writeString(file, content + System.lineSeparator());
+    }
+
+    // Runs before any handler: token, Host and Origin.
+    private void authorize(HttpExchange exchange) throws ApiException {
+        if (exchange.getRequestHeaders().containsKey("Origin")) {
+            throw new ApiException(403, "Cross-origin requests are not allowed.");
+        }
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        String port = ":" + getPort();
+        if (host == null || !(host.equalsIgnoreCase("127.0.0.1" + port) || host.equalsIgnoreCase("localhost" + port))) {
+            throw new ApiException(403, "Unexpected Host header: " + host);
+        }
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        byte[] presented = authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)
+                ? authorization.substring(7).trim().getBytes(StandardCharsets.US_ASCII) : new byte[0];
+        if (!MessageDigest.isEqual(token, presented)) { // constant time
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            throw new ApiException(401, "Missing or wrong bearer token; it is in " + tokenFile + ".");
+        }
+    }
+
+    private void dispatch(HttpExchange exchange, Handler handler) {
+        requests.increment();
+        try {
+            List<String> path = new ArrayList<>();
+            for (String part : exchange.getRequestURI().getRawPath().split("/")) {
+                if (!part.isEmpty()) path.add(URLDecoder.decode(part, StandardCharsets.UTF_8));
+            }
+            try {
+                authorize(exchange);
+                handler.handle(exchange, path);
+            } catch (ApiException e) {
+                sendError(exchange, e.status, e.getMessage());
+            } catch (SQLException | IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (StreamAborted e) {
+                throw e;
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, e.toString());
+            }
+        } catch (IOException e) {
+            // Client went away; nothing left to tell it.
+        }
+        exchange.close();
+    }
+
+    private void handleCalc(HttpExchange exchange, List<String> path) throws IOException, ApiException {
+        requireMethod(exchange, "POST");
+        requireContentType(exchange, "application/json");
+        StringBuilder json = new StringBuilder("[");
+        for (String line : new JsonInput(readBody(exchange)).readStringArray()) {
+            if (line == null || line.trim().isEmpty()) continue;
+            if (json.length() > 1) json.append(',');
+            json.append("{\"expression\":").append(quote(line.trim()));
+            try {
+                double result = calculator.evaluate(line);
+                json.append(",\"result\":").append(number(result)).append('}');
+            } catch (IllegalArgumentException e) {
+                json.append(",\"error\":").append(quote(e.getMessage())).append('}');
+            }
+        }
+        sendJson(exchange, 200, json.append(']').toString());
+    }
+
+    private void handleTables(HttpExchange exchange, List<String> path) throws IOException, SQLException, ApiException {
+        String method = exchange.getRequestMethod();
+        if (path.size() == 1) {
+            requireMethod(exchange, "GET");
+            StringBuilder json = new StringBuilder("[");
+            for (String table : db.getTableNames()) {
+                if (json.length() > 1) json.append(',');
+                json.append(quote(table));
+            }
+            sendJson(exchange, 200, json.append(']').toString());
+        } else if (path.size() == 2) {
+            requireMethod(exchange, "GET");
+            sendPage(exchange, path.get(1));
+        } else if (path.size() >= 3 && path.get(2).equals("rows") && path.size() <= 4) {
+            String table = path.get(1);
+            String key = path.size() == 4 ? path.get(3) : null;
+            if (method.equals("POST") && key == null) {
+                requireContentType(exchange, "application/json");
+                String generated = db.insertRow(table, new JsonInput(readBody(exchange)).readFlatObject());
+                sendJson(exchange, 201, "{\"key\":" + quote(generated) + "}");
+            } else if (method.equals("PUT") && key != null) {
+                requireContentType(exchange, "application/json");
+                List<DatabaseHelper.CellEdit> edits = new ArrayList<>();
+                for (Map.Entry<String, String> value : new JsonInput(readBody(exchange)).readFlatObject().entrySet()) {
+                    edits.add(new DatabaseHelper.CellEdit(key, value.getKey(), value.getValue()));
+                }
+                db.updateCells(table, primaryKey(table), edits);
+                sendJson(exchange, 200, "{\"updated\":" + edits.size() + "}");
+            } else if (method.equals("DELETE")) {
+                List<String> keys = key != null ? List.of(key) : parseQueryValues(exchange, "key");
+                if (keys.isEmpty()) throw new ApiException(400, "No keys given to delete.");
+                int deleted = db.deleteMultipleRows(table, primaryKey(table), keys);
+                sendJson(exchange, 200, "{\"deleted\":" + deleted + "}");
+            } else {
+                throw new ApiException(405, method + " is not supported on " + exchange.getRequestURI().getPath());
+            }
+        } else {
+            throw new ApiException(404, "No such resource: " + exchange.getRequestURI().getPath());
+        }
+    }
+
+    private void sendPage(HttpExchange exchange, String table) throws IOException, SQLException, ApiException {
+        Map<String, String> params = parseForm(exchange.getRequestURI().getRawQuery());
+        int offset = intParam(params.remove("offset"), 0);
+        int limit = Math.min(intParam(params.remove("limit"), DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+        String sort = params.remove("sort");
+        boolean ascending = !"desc".equalsIgnoreCase(params.remove("order"));
+        boolean csv = wantsCsv(exchange, params.remove("format"));
+        // Whatever is left filters by column prefix; unknown columns are rejected by getTablePage.
+        DatabaseHelper.TableData page = db.getTablePage(new DatabaseHelper.TableQuery(table, params, sort, ascending, offset, limit));
+        if (csv) {
+            startStream(exchange, "text/csv; charset=utf-8");
+            try (Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+                Csv.writeRow(out, page.headers.toArray(new String[0]));
+                for (List<String> row : page.rows) {
+                    Csv.writeRow(out, row.toArray(new String[0]));
+                }
+            }
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"columns\":");
+        appendArray(json, page.headers);
+        json.append(",\"rows\":[");
+        for (int i = 0; i < page.rows.size(); i++) {
+            if (i > 0) json.append(',');
+            appendArray(json, page.rows.get(i));
+        }
+        json.append("],\"hasMore\":").append(page.hasMoreRows).append('}');
+        sendJson(exchange, 200, json.toString());
+    }
+
+    // Rows are written batch by batch as the query streams; the next batch is requested only once the last is sent.
+    // A failure after the first row ends JSON with an "error" member and CSV with a dropped connection.
+    private void handleQuery(HttpExchange exchange, List<String> path) throws IOException, ApiException {
+        requireMethod(exchange, "POST");
+        requireContentType(exchange, "application/sql");
+        String sql = readBody(exchange);
+        if (sql.trim().isEmpty()) throw new ApiException(400, "No SQL given.");
+        if (!DatabaseHelper.isSingleQuery(sql)) {
+            throw new ApiException(400, "/query takes a single SELECT; use /execute for anything else.");
+        }
+        boolean csv = wantsCsv(exchange, parseForm(exchange.getRequestURI().getRawQuery()).get("format"));
+        Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        db.streamQuery(sql, STREAM_BATCH_SIZE).subscribe(new Flow.Subscriber<QueryPublisher.RowBatch>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(QueryPublisher.RowBatch batch) {
+                try {
+                    if (batch.firstRow == 0) {
+                        startStream(exchange, csv ? "text/csv; charset=utf-8" : "application/json; charset=utf-8");
+                        if (csv) {
+                            Csv.writeRow(out, batch.headers.toArray(new String[0]));
+                        } else {
+                            StringBuilder head = new StringBuilder("{\"columns\":");
+                            appendArray(head, batch.headers);
+                            out.write(head.append(",\"rows\":[").toString());
+                        }
+                    }
+                    for (int i = 0; i < batch.rows.size(); i++) {
+                        if (csv) {
+                            Csv.writeRow(out, batch.rows.get(i).toArray(new String[0]));
+                        } else {
+                            StringBuilder row = new StringBuilder(batch.firstRow + i > 0 ? "," : "");
+                            appendArray(row, batch.rows.get(i));
+                            out.write(row.toString());
+                        }
+                    }
+                    out.flush();
+                    subscription.request(1);
+                } catch (IOException e) {
+                    subscription.cancel();
+                    done.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                done.completeExceptionally(error);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        try {
+            done.get();
+            if (!csv) out.write("]}");
+            out.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StreamAborted(e); // server shutting down
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (exchange.getResponseCode() == -1) {
+                throw new ApiException(400, cause.getMessage()); // failed before any row was sent
+            }
+            if (csv) {
+                throw new StreamAborted(cause); // CSV has no place for the error
+            }
+            out.write("],\"error\":" + quote(cause.getMessage()) + "}");
+            out.flush();
+        }
+    }
+
+    private void handleExecute(HttpExchange exchange, List<String> path) throws IOException, SQLException, ApiException {
+        requireMethod(exchange, "POST");
+        requireContentType(exchange, "application/sql");
+        String sql = readBody(exchange);
+        if (sql.trim().isEmpty()) throw new ApiException(400, "No SQL given.");
+        String requestId = exchange.getRequestHeaders().getFirst("X-Request-Id");
+        if (requestId != null && runningRequests.putIfAbsent(requestId, Thread.currentThread()) != null) {
+            throw new ApiException(409, "Request " + requestId + " is already running.");
+        }
+        List<DatabaseHelper.ScriptResult> results;
+        try {
+            results = db.executeScript(sql);
+        } finally {
+            if (requestId != null) runningRequests.remove(requestId);
+        }
+        StringBuilder json = new StringBuilder("[");
+        try {
+            for (DatabaseHelper.ScriptResult result : results) {
+                if (json.length() > 1) json.append(',');
+                json.append("{\"index\":").append(result.index).append(",\"millis\":").append(number(result.elapsedNanos / 1e6));
+                if (result.error != null) {
+                    json.append(",\"error\":").append(quote(result.error));
+                } else if (result.data != null) {
+                    json.append(",\"columns\":");
+                    appendArray(json, result.data.headers);
+                    json.append(",\"rows\":[");
+                    for (int i = 0; i < result.data.rows.size(); i++) {
+                        if (i > 0) json.append(',');
+                        appendArray(json, result.data.rows.get(i));
+                    }
+                    json.append("],\"truncated\":").append(result.data.hasMoreRows);
+                } else {
+                    json.append(",\"updateCount\":").append(result.updateCount);
+                }
+                json.append('}');
+            }
+        } finally {
+            results.forEach(DatabaseHelper.ScriptResult::close);
+        }
+        sendJson(exchange, 200, json.append(']').toString());
+    }
+
+    private void handleCancel(HttpExchange exchange, List<String> path) throws IOException, ApiException {
+        requireMethod(exchange, "POST");
+        if (path.size() != 2) {
+            throw new ApiException(400, "Name the request: POST /cancel/{id}, with the X-Request-Id sent to /execute.");
+        }
+        Thread worker = runningRequests.get(path.get(1));
+        if (worker == null) throw new ApiException(404, "No running request " + path.get(1) + ".");
+        sendJson(exchange, 200, "{\"cancelled\":" + db.cancelRunningQueries(worker) + "}");
+    }
+
+    private String primaryKey(String table) throws SQLException {
+        return db.getColumnNames(table).get(0); // same convention as the GUI and the exporter
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) throws ApiException {
+        if (!exchange.getRequestMethod().equals(method)) {
+            throw new ApiException(405, "Use " + method + " for " + exchange.getRequestURI().getPath());
+        }
+    }
+
+    private static void requireContentType(HttpExchange exchange, String mediaType) throws ApiException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String actual = contentType == null ? "" : contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        if (!actual.equals(mediaType)) {
+            throw new ApiException(415, "Send the body as " + mediaType + ".");
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException, ApiException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                body.write(buffer, 0, n);
+                if (body.size() > MAX_BODY_BYTES) throw new ApiException(413, "Request body over " + MAX_BODY_BYTES + " bytes.");
+            }
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    // application/x-www-form-urlencoded, also used for query strings; later values of a name win.
+    private static Map<String, String> parseForm(String encoded) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (encoded == null || encoded.isEmpty()) return values;
+        for (String pair : encoded.trim().split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            values.put(name, eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static List<String> parseQueryValues(HttpExchange exchange, String name) {
+        List<String> values = new ArrayList<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return values;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8).equals(name)) {
+                values.add(URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return values;
+    }
+
+    private static int intParam(String value, int defaultValue) throws ApiException {
+        if (value == null || value.isEmpty()) return defaultValue;
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < 0) throw new NumberFormatException();
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Not a non-negative integer: " + value);
+        }
+    }
+
+    private static boolean wantsCsv(HttpExchange exchange, String format) {
+        if (format != null) return format.equalsIgnoreCase("csv");
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        return accept != null && accept.contains("text/csv");
+    }
+
+    // Length 0 means chunked transfer: the body is sent as it is written.
+    private static void startStream(HttpExchange exchange, String contentType) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, 0);
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) return; // headers already sent; the stream just ends
+        sendJson(exchange, status, "{\"error\":" + quote(message) + "}");
+    }
+
+    private static void appendArray(StringBuilder json, List<String> values) {
+        json.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append(quote(values.get(i)));
+        }
+        json.append(']');
+    }
+
+    private static String number(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : quote(Double.toString(value));
+    }
+
+    // Just enough JSON for request bodies: an array of strings, or an object of scalar values.
+    private static class JsonInput {
+        private final String text;
+        private int pos;
+
+        JsonInput(String text) {
+            this.text = text;
+        }
+
+        List<String> readStringArray() {
+            List<String> values = new ArrayList<>();
+            expect('[');
+            if (!consume(']')) {
+                do {
+                    values.add(readScalar());
+                } while (consume(','));
+                expect(']');
+            }
+            end();
+            return values;
+        }
+
+        // Numbers and booleans keep their text; null stays null.
+        Map<String, String> readFlatObject() {
+            Map<String, String> values = new LinkedHashMap<>();
+            expect('{');
+            if (!consume('}')) {
+                do {
+                    skipSpace();
+                    String name = readString();
+                    expect(':');
+                    values.put(name, readScalar());
+                } while (consume(','));
+                expect('}');
+            }
+            end();
+            return values;
+        }
+
+        private String readScalar() {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == '"') return readString();
+            int start = pos;
+            while (pos < text.length() && "+-.eE0123456789truefalsn".indexOf(text.charAt(pos)) >= 0) pos++;
+            String literal = text.substring(start, pos);
+            if (literal.equals("null")) return null;
+            if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                return literal;
+            }
+            throw error("a string, number, boolean or null");
+        }
+
+        private String readString() {
+            if (pos >= text.length() || text.charAt(pos) != '"') throw error("a string");
+            StringBuilder out = new StringBuilder();
+            pos++;
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') return out.toString();
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) break;
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'b': out.append('\b'); break;
+                    case 'f': out.append('\f'); break;
+                    case 'n': out.append('\n'); break;
+                    case 'r': out.append('\r'); break;
+                    case 't': out.append('\t'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) throw error("four hex digits");
+                        try {
+                            out.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("four hex digits");
+                        }
+                        pos += 4;
+                        break;
+                    default: out.append(escaped); // \" \\ \/
+                }
+            }
+            throw error("the end of the string");
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) throw error("'" + c + "'");
+        }
+
+        private boolean consume(char c) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void end() {
+            skipSpace();
+            if (pos != text.length()) throw error("the end of the body");
+        }
+
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+
+        private IllegalArgumentException error(String expected) {
+            return new IllegalArgumentException("Bad JSON at offset " + pos + ": expected " + expected + ".");
+        }
+    }
+
+    private static String quote(String value) {
+        if (value == null) return "null";
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+                    else out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+}
@@ -0,0 +1,59 @@
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-behind buffer for grid cell edits. Repeated edits of the same cell are coalesced,
+ * and the buffer asks to be flushed once no new edit has arrived for the debounce delay.
+ * All methods must be called on the JavaFX application thread.
+ */
+class CellEditBuffer {
+    private final Map<String, DatabaseHelper.CellEdit> pending = new LinkedHashMap<>();
+    private final PauseTransition debounce;
+    private String tableName;
+    private String pkColumn;
+
+    CellEditBuffer(Duration delay, Runnable onFlushDue) {
+        this.debounce = new PauseTransition(delay);
+        this.debounce.setOnFinished(e -> onFlushDue.run());
+    }
+
+    void record(String tableName, String pkColumn, String pkValue, String columnName, String newValue) {
+        if (!pending.isEmpty() && !tableName.equals(this.tableName)) {
+            throw new IllegalStateException("Pending edits for '" + this.tableName + "' must be flushed first.");
+        }
+        this.tableName = tableName;
+        this.pkColumn = pkColumn;
+        // Key on row + column so a later edit of the same cell replaces the earlier one.
+        pending.put(pkValue + '\u0000' + columnName, new DatabaseHelper.CellEdit(pkValue, columnName, newValue));
+        debounce.playFromStart();
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    int size() {
+        return pending.size();
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    String getPkColumn() {
+        return pkColumn;
+    }
+
+    // Hands back the pending edits in arrival order and empties the buffer.
+    List<DatabaseHelper.CellEdit> drain() {
+        debounce.stop();
+        List<DatabaseHelper.CellEdit> edits = new ArrayList<>(pending.values());
+        pending.clear();
+        return edits;
+    }
+}
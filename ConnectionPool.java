@@ -0,0 +1,192 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Small fixed-size JDBC connection pool. Every pooled connection carries its own
+ * {@link StatementCache}, so repeated statements skip preparation while the connection stays warm.
+ */
+class ConnectionPool implements AutoCloseable {
+    // A connection idle this long may have been dropped by the server (wait_timeout, restart), so it is
+    // checked with a round trip before it is handed out; busier connections skip the check.
+    private static final long VALIDATE_AFTER_IDLE_NANOS =
+            Long.getLong("fxdb.poolValidateAfterIdleSeconds", 30) * 1_000_000_000L;
+    private static final int VALIDATE_TIMEOUT_SECONDS = 1;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final int statementCacheSize;
+    private final QueryStats stats;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final List<PooledConnection> all = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    // Connections are instrumented by stats, which also records how long acquire() waits.
+    ConnectionPool(String url, String user, String password, int maxSize, int statementCacheSize, QueryStats stats) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.statementCacheSize = statementCacheSize;
+        this.stats = stats;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    PooledConnection acquire() throws SQLException {
+        if (closed) throw new SQLException("Connection pool has been closed.");
+        long start = System.nanoTime();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+        return take(start);
+    }
+
+    // Never waits: null unless more than `reserve` connections would still be free afterwards.
+    // For background work that must not hold up or crowd out real queries.
+    PooledConnection tryAcquire(int reserve) throws SQLException {
+        if (closed || permits.availablePermits() <= reserve || !permits.tryAcquire()) {
+            return null;
+        }
+        return take(System.nanoTime());
+    }
+
+    // Called holding a permit; gives it back if no connection can be handed out.
+    private PooledConnection take(long start) throws SQLException {
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    stats.recordAcquire(System.nanoTime() - start);
+                    pooled.checkedOut.set(true);
+                    return pooled;
+                }
+                discard(pooled);
+            }
+            pooled = new PooledConnection(stats.instrument(DriverManager.getConnection(url, user, password)));
+            all.add(pooled);
+            stats.recordAcquire(System.nanoTime() - start);
+            pooled.checkedOut.set(true);
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private static boolean isUsable(PooledConnection pooled) {
+        try {
+            if (pooled.connection.isClosed()) return false;
+            return System.nanoTime() - pooled.idleSince < VALIDATE_AFTER_IDLE_NANOS
+                    || pooled.connection.isValid(VALIDATE_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        try {
+            if (closed || pooled.discardOnRelease || pooled.connection.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            if (!pooled.connection.getAutoCommit()) {
+                // Never hand out a connection that is still inside someone else's transaction.
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+            pooled.idleSince = System.nanoTime();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        all.remove(pooled);
+        pooled.statementCache.close();
+        try {
+            pooled.connection.close();
+        } catch (SQLException ignored) {
+            // Broken connections are dropped regardless.
+        }
+    }
+
+    void registerMetrics(MetricsRegistry registry) {
+        registry.gauge(this, "db_pool_connections_max", "Connections the pool may open.", () -> maxSize);
+        registry.gauge(this, "db_pool_connections_active", "Connections currently handed out.", () -> maxSize - permits.availablePermits());
+        registry.gauge(this, "db_pool_connections_idle", "Open connections waiting in the pool.", idle::size);
+        registry.gauge(this, "db_statement_cache_hit_ratio", "Share of prepares served by the statement cache.",
+                () -> MetricsRegistry.ratio(getStatementCacheHits(), getStatementCacheMisses()));
+    }
+
+    long getStatementCacheHits() {
+        return all.stream().mapToLong(p -> p.statementCache.getHits()).sum();
+    }
+
+    long getStatementCacheMisses() {
+        return all.stream().mapToLong(p -> p.statementCache.getMisses()).sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    class PooledConnection implements AutoCloseable {
+        private final Connection connection;
+        private final StatementCache statementCache;
+        private volatile boolean discardOnRelease;
+        private final AtomicBoolean checkedOut = new AtomicBoolean(); // a second close must not free a second permit
+        private volatile long idleSince;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statementCache = new StatementCache(connection, statementCacheSize);
+        }
+
+        Connection connection() {
+            return connection;
+        }
+
+        // Cached statement for this connection; do not close it.
+        PreparedStatement prepare(String sql) throws SQLException {
+            return statementCache.prepare(sql);
+        }
+
+        PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+            return statementCache.prepare(sql, autoGeneratedKeys);
+        }
+
+        // For connections whose statement was cancelled: the server may still be delivering the kill,
+        // so the connection is closed on release rather than handed to the next caller.
+        void discardOnRelease() {
+            discardOnRelease = true;
+        }
+
+        // Returns the connection to the pool instead of closing it; closing again does nothing.
+        @Override
+        public void close() {
+            if (checkedOut.compareAndSet(true, false)) {
+                release(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * While open, Ctrl+C cancels the watched statement instead of ending the program; closing restores
+ * the previous handler. The only way to handle SIGINT is the JDK-internal sun.misc.Signal, so it is
+ * looked up reflectively: where it is missing, inaccessible or the JVM reserves the signal (e.g. when
+ * started with -Xrs), Ctrl+C keeps its default behaviour and only the statement timeout applies.
+ */
+final class ConsoleInterrupt implements AutoCloseable {
+    private final Object previous; // the sun.misc.SignalHandler we replaced, null when none was installed
+    private volatile Statement statement;
+
+    ConsoleInterrupt() {
+        Object installed = null;
+        try {
+            Class<?> handlerType = Class.forName("sun.misc.SignalHandler");
+            Object handler = Proxy.newProxyInstance(handlerType.getClassLoader(), new Class<?>[]{handlerType},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "handle":
+                                cancel();
+                                return null;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                return "ConsoleInterrupt";
+                        }
+                    });
+            installed = setHandler(handler);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // sun.misc.Signal not available, or SIGINT reserved by the JVM.
+        }
+        previous = installed;
+    }
+
+    // Signal.handle(new Signal("INT"), handler), returning the handler it replaced.
+    private static Object setHandler(Object handler) throws ReflectiveOperationException {
+        Class<?> signalType = Class.forName("sun.misc.Signal");
+        Class<?> handlerType = Class.forName("sun.misc.SignalHandler");
+        Object signal = signalType.getConstructor(String.class).newInstance("INT");
+        Method handle = signalType.getMethod("handle", signalType, handlerType);
+        try {
+            return handle.invoke(null, signal, handler);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    void watch(Statement statement) {
+        this.statement = statement;
+    }
+
+    private void cancel() {
+        Statement running = statement;
+        if (running == null) return;
+        System.err.println("\nCancelling the running statement...");
+        try {
+            running.cancel();
+        } catch (SQLException e) {
+            System.err.println("Could not cancel: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        statement = null;
+        if (previous != null) {
+            try {
+                setHandler(previous);
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                // Keep our handler; with nothing watched it does nothing.
+            }
+        }
+    }
+}
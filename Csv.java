@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal RFC 4180 CSV helpers shared by export and import.
+ * NULL is written as an empty unquoted field; an empty string is written as "".
+ */
+final class Csv {
+    private Csv() {
+    }
+
+    static void writeRow(Writer out, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) out.write(',');
+            writeField(out, values[i]);
+        }
+        out.write("\r\n");
+    }
+
+    static void writeField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.isEmpty() || needsQuoting(value)) {
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        } else {
+            out.write(value);
+        }
+    }
+
+    /**
+     * Streaming record reader. Quoted fields may contain commas, doubled quotes and line breaks;
+     * an empty unquoted field is returned as null so that NULL survives an export/import round trip.
+     */
+    static class RowReader {
+        private final Reader in;
+        private int peeked = -2;
+        private long rowNumber;
+
+        RowReader(Reader in) {
+            this.in = in;
+        }
+
+        // Next record, or null at end of input.
+        String[] next() throws IOException {
+            int c = read();
+            if (c == -1) return null;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean wasQuoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) throw new IOException("Unterminated quoted field in record " + (rowNumber + 1));
+                    if (c == '"') {
+                        if (peek() == '"') {
+                            read();
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if (c == ',' || c == '\n' || c == '\r' || c == -1) {
+                    fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+                    field.setLength(0);
+                    wasQuoted = false;
+                    if (c != ',') {
+                        if (c == '\r' && peek() == '\n') read();
+                        break;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+            rowNumber++;
+            return fields.toArray(new String[0]);
+        }
+
+        long getRowNumber() {
+            return rowNumber;
+        }
+
+        private int read() throws IOException {
+            if (peeked != -2) {
+                int c = peeked;
+                peeked = -2;
+                return c;
+            }
+            return in.read();
+        }
+
+        private int peek() throws IOException {
+            if (peeked == -2) peeked = in.read();
+            return peeked;
+        }
+    }
+
+    private static boolean needsQuoting(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') return true;
+        }
+        return false;
+    }
+}
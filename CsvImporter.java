@@ -0,0 +1,342 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bulk CSV loader. A parser thread reads the file, converts each value to the type of its column
+ * (taken from the table metadata) and hands batches to a bounded queue; several writer threads,
+ * each on its own pooled connection, insert them as JDBC batches and commit every commitSize rows.
+ * Rows that cannot be converted or inserted go to an error file next to the input instead of aborting the load.
+ */
+class CsvImporter {
+    private static final List<Object[]> END_OF_INPUT = Collections.emptyList();
+    private static final long QUEUE_POLL_MILLIS = 100;
+
+    private final ConnectionPool pool;
+    private final int batchSize;
+    private final int commitSize;
+    private final int writers;
+
+    static class Result {
+        final long imported;
+        final long rejected;
+        final Path errorFile; // null when every row was imported
+
+        Result(long imported, long rejected, Path errorFile) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.errorFile = errorFile;
+        }
+    }
+
+    CsvImporter(ConnectionPool pool, int batchSize, int commitSize, int writers) {
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.commitSize = commitSize;
+        this.writers = writers;
+    }
+
+    // The first CSV record must name the target columns; progress reports rows imported so far (total -1, unknown).
+    Result importCsv(String tableName, Path csvFile, DatabaseHelper.ProgressListener progress) throws SQLException, IOException {
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8);
+             ErrorFile errors = new ErrorFile(csvFile.resolveSibling(csvFile.getFileName() + ".errors.csv"))) {
+            Csv.RowReader rows = new Csv.RowReader(reader);
+            String[] header = rows.next();
+            if (header == null) {
+                return new Result(0, 0, null);
+            }
+            int[] columnTypes = lookupColumnTypes(tableName, header);
+            errors.setHeader(header);
+            String sql = "INSERT INTO " + tableName + " (" + String.join(", ", header) + ") VALUES ("
+                    + String.join(", ", Collections.nCopies(header.length, "?")) + ")";
+
+            BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(writers * 2); // bounds memory, throttles the parser
+            AtomicLong imported = new AtomicLong();
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            List<Thread> writerThreads = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                Thread writer = new Thread(() -> {
+                    try {
+                        writeBatches(sql, columnTypes, queue, errors, imported, progress, failure);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }, "csv-import-writer-" + i);
+                writer.start();
+                writerThreads.add(writer);
+            }
+
+            try {
+                parse(rows, header.length, columnTypes, queue, errors, failure);
+            } finally {
+                for (int i = 0; i < writers; i++) {
+                    putQuietly(queue, END_OF_INPUT, failure);
+                }
+                for (Thread writer : writerThreads) {
+                    joinQuietly(writer);
+                }
+            }
+
+            Exception error = failure.get();
+            if (error instanceof SQLException) throw (SQLException) error;
+            if (error instanceof IOException) throw (IOException) error;
+            if (error != null) throw new IOException("Import into '" + tableName + "' failed: " + error.getMessage(), error);
+            return new Result(imported.get(), errors.count(), errors.count() > 0 ? errors.path : null);
+        }
+    }
+
+    private void parse(Csv.RowReader rows, int columnCount, int[] columnTypes, BlockingQueue<List<Object[]>> queue,
+                       ErrorFile errors, AtomicReference<Exception> failure) throws IOException {
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        String[] fields;
+        while (failure.get() == null && (fields = rows.next()) != null) {
+            if (fields.length == 1 && fields[0] == null) continue; // blank line
+            if (fields.length != columnCount) {
+                errors.write(fields, "Expected " + columnCount + " fields but found " + fields.length);
+                continue;
+            }
+            Object[] values = new Object[columnCount + 1];
+            try {
+                for (int i = 0; i < columnCount; i++) {
+                    values[i] = convert(fields[i], columnTypes[i]);
+                }
+            } catch (IllegalArgumentException e) {
+                errors.write(fields, "Bad value: " + e.getMessage());
+                continue;
+            }
+            values[columnCount] = fields; // raw text, kept for the error file
+            batch.add(values);
+            if (batch.size() == batchSize) {
+                putQuietly(queue, batch, failure);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            putQuietly(queue, batch, failure);
+        }
+    }
+
+    private void writeBatches(String sql, int[] columnTypes, BlockingQueue<List<Object[]>> queue, ErrorFile errors,
+                              AtomicLong imported, DatabaseHelper.ProgressListener progress,
+                              AtomicReference<Exception> failure) throws SQLException, IOException, InterruptedException {
+        try (ConnectionPool.PooledConnection conn = pool.acquire()) {
+            Connection connection = conn.connection();
+            connection.setAutoCommit(false);
+            PreparedStatement pstmt = conn.prepare(sql);
+            List<List<Object[]>> uncommitted = new ArrayList<>();
+            int uncommittedRows = 0;
+            while (true) {
+                List<Object[]> batch = queue.poll(QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (failure.get() != null || batch == END_OF_INPUT) break;
+                if (batch == null) continue;
+                try {
+                    for (Object[] row : batch) {
+                        bind(pstmt, row, columnTypes);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    uncommitted.add(batch);
+                    uncommittedRows += batch.size();
+                } catch (SQLException e) {
+                    // Redo everything since the last commit row by row so only the bad rows are rejected.
+                    pstmt.clearBatch();
+                    connection.rollback();
+                    uncommitted.add(batch);
+                    replayRowByRow(connection, pstmt, uncommitted, columnTypes, errors, imported);
+                    uncommitted.clear();
+                    uncommittedRows = 0;
+                    reportProgress(progress, imported);
+                    continue;
+                }
+                if (uncommittedRows >= commitSize) {
+                    connection.commit();
+                    imported.addAndGet(uncommittedRows);
+                    uncommitted.clear();
+                    uncommittedRows = 0;
+                    reportProgress(progress, imported);
+                }
+            }
+            if (failure.get() != null) {
+                connection.rollback();
+                return;
+            }
+            connection.commit();
+            imported.addAndGet(uncommittedRows);
+            reportProgress(progress, imported);
+        }
+    }
+
+    private static void replayRowByRow(Connection connection, PreparedStatement pstmt, List<List<Object[]>> batches,
+                                       int[] columnTypes, ErrorFile errors, AtomicLong imported) throws SQLException, IOException {
+        long good = 0;
+        for (List<Object[]> batch : batches) {
+            for (Object[] row : batch) {
+                try {
+                    bind(pstmt, row, columnTypes);
+                    pstmt.executeUpdate();
+                    connection.commit();
+                    good++;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    errors.write((String[]) row[row.length - 1], e.getMessage());
+                }
+            }
+        }
+        imported.addAndGet(good);
+    }
+
+    private static void bind(PreparedStatement pstmt, Object[] row, int[] columnTypes) throws SQLException {
+        for (int i = 0; i < columnTypes.length; i++) {
+            if (row[i] == null) {
+                pstmt.setNull(i + 1, columnTypes[i]);
+            } else {
+                pstmt.setObject(i + 1, row[i], columnTypes[i]);
+            }
+        }
+    }
+
+    private int[] lookupColumnTypes(String tableName, String[] header) throws SQLException {
+        Map<String, Integer> typesByName = new HashMap<>();
+        try (ConnectionPool.PooledConnection conn = pool.acquire();
+             Statement stmt = conn.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName + " WHERE 1 = 0")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                typesByName.put(metaData.getColumnName(i).toUpperCase(), metaData.getColumnType(i));
+            }
+        }
+        int[] types = new int[header.length];
+        for (int i = 0; i < header.length; i++) {
+            Integer type = header[i] == null ? null : typesByName.get(header[i].trim().toUpperCase());
+            if (type == null) {
+                throw new SQLException("CSV column '" + header[i] + "' does not exist in table '" + tableName + "'. Columns: " + typesByName.keySet());
+            }
+            header[i] = header[i].trim();
+            types[i] = type;
+        }
+        return types;
+    }
+
+    static Object convert(String value, int sqlType) {
+        if (value == null) return null;
+        String trimmed = value.trim();
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return Integer.valueOf(trimmed);
+            case Types.BIGINT:
+                return Long.valueOf(trimmed);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return new BigDecimal(trimmed);
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return Double.valueOf(trimmed);
+            case Types.BIT:
+            case Types.BOOLEAN:
+                if (trimmed.equals("1") || trimmed.equalsIgnoreCase("true")) return Boolean.TRUE;
+                if (trimmed.equals("0") || trimmed.equalsIgnoreCase("false")) return Boolean.FALSE;
+                throw new IllegalArgumentException("'" + value + "' is not a boolean");
+            case Types.DATE:
+                return Date.valueOf(trimmed);
+            case Types.TIME:
+                return Time.valueOf(trimmed);
+            case Types.TIMESTAMP:
+                return Timestamp.valueOf(trimmed);
+            default:
+                return value;
+        }
+    }
+
+    private static void reportProgress(DatabaseHelper.ProgressListener progress, AtomicLong imported) {
+        if (progress != null) progress.onProgress(imported.get(), -1);
+    }
+
+    // Gives up once any thread has failed, so a dead writer can never block the parser.
+    private static void putQuietly(BlockingQueue<List<Object[]>> queue, List<Object[]> batch, AtomicReference<Exception> failure) {
+        try {
+            while (!queue.offer(batch, QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (failure.get() != null) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Rejected rows in CSV form plus an ERROR column; only created once the first row is rejected.
+    private static class ErrorFile implements AutoCloseable {
+        final Path path;
+        private String[] header;
+        private Writer out;
+        private long count;
+
+        // The file is only created on the first reject, so one left by an earlier run is removed up front;
+        // otherwise a clean import would leave the old rejects looking current.
+        ErrorFile(Path path) throws IOException {
+            this.path = path;
+            Files.deleteIfExists(path);
+        }
+
+        void setHeader(String[] header) {
+            this.header = Arrays.copyOf(header, header.length + 1);
+            this.header[header.length] = "ERROR";
+        }
+
+        synchronized void write(String[] fields, String message) throws IOException {
+            if (out == null) {
+                out = new BufferedWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+                Csv.writeRow(out, header);
+            }
+            String[] row = Arrays.copyOf(fields, fields.length + 1);
+            row[fields.length] = message;
+            Csv.writeRow(out, row);
+            count++;
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (out != null) out.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Which database to use: fxdb.jdbcUrl, fxdb.user, fxdb.password and (optionally) fxdb.dialect, read from
+ * system properties or from a properties file (-Dfxdb.config, default fxdb.properties in the working
+ * directory); system properties win. The URL defaults to the local MySQL the app has always used. There is
+ * no default login: the user and password may also come from the FXDB_USER and FXDB_PASSWORD environment
+ * variables, and the app refuses to start without them (an empty password is fine if set explicitly).
+ * Embedded engines run in-process and only need their driver jar on the class path, e.g.
+ * <pre>
+ * java -cp fxdb.jar:h2.jar -Dfxdb.jdbcUrl="jdbc:h2:mem:fare;DB_CLOSE_DELAY=-1" -Dfxdb.user=sa -Dfxdb.password= LoadBenchmark
+ * </pre>
+ */
+final class DatabaseConfig {
+    private static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/fare";
+    private static DatabaseConfig current; // guarded by DatabaseConfig.class
+
+    final String url; // as configured, plus the connection options the dialect needs
+    final String user;
+    final String password;
+    final SqlDialect dialect;
+
+    private DatabaseConfig(String url, String user, String password, SqlDialect dialect) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.dialect = dialect;
+    }
+
+    static synchronized DatabaseConfig get() {
+        if (current == null) {
+            current = load();
+        }
+        return current;
+    }
+
+    private static DatabaseConfig load() {
+        Properties file = new Properties();
+        Path path = Paths.get(System.getProperty("fxdb.config", "fxdb.properties"));
+        if (Files.isRegularFile(path)) {
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                file.load(reader);
+            } catch (IOException e) {
+                System.err.println("Could not read " + path + ", using defaults: " + e.getMessage());
+            }
+        }
+        String url = setting(file, "fxdb.jdbcUrl", DEFAULT_URL);
+        String dialectName = setting(file, "fxdb.dialect", null);
+        SqlDialect dialect;
+        try {
+            dialect = dialectName == null ? SqlDialect.forUrl(url) : SqlDialect.valueOf(dialectName.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown fxdb.dialect '" + dialectName + "', guessing from the URL.");
+            dialect = SqlDialect.forUrl(url);
+        }
+        return new DatabaseConfig(dialect.connectionUrl(url), required(file, "fxdb.user", "FXDB_USER"),
+                required(file, "fxdb.password", "FXDB_PASSWORD"), dialect);
+    }
+
+    private static String setting(Properties file, String name, String fallback) {
+        return System.getProperty(name, file.getProperty(name, fallback));
+    }
+
+    private static String required(Properties file, String name, String environmentVariable) {
+        String value = setting(file, name, System.getenv(environmentVariable));
+        if (value == null) {
+            throw new IllegalStateException("No database " + name.substring("fxdb.".length()) + " configured: set -D" + name
+                    + ", " + name + " in " + System.getProperty("fxdb.config", "fxdb.properties")
+                    + " or the " + environmentVariable + " environment variable.");
+        }
+        return value;
+    }
+}
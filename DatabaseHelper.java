@@ -1,52 +1,351 @@
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 
 class DatabaseHelper {
-    private static final String JDBC_URL = "jdbc:mysql://localhost:3306/fare";
-    private static final String USER = "root";
-    private static final String PASSWORD = "Fareedha@1234"; // Remember to change if needed
+    // Connection settings and engine differences come from DatabaseConfig (-Dfxdb.jdbcUrl etc.).
+    private static final DatabaseConfig CONFIG = DatabaseConfig.get();
+    private static final int POOL_SIZE = 4;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final int KEY_CHUNK_SIZE = 500;
+    private static final String KEY_CHUNK_PLACEHOLDERS = String.join(",", Collections.nCopies(KEY_CHUNK_SIZE, "?"));
 
-    static class TableData {
+    private static final int EXPORT_PARALLELISM = POOL_SIZE - 1; // leave a connection for the UI
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final int IMPORT_COMMIT_SIZE = 10_000;
+    private static final long RESULT_CACHE_BYTES = 64L * 1024 * 1024;
+    // Prefetch runs on one thread, keeps at most this many tables queued (oldest intent dropped first)
+    // and only uses a connection while at least PREFETCH_RESERVE others stay free for real queries.
+    private static final int PREFETCH_QUEUE_SIZE = 8;
+    private static final int PREFETCH_RESERVE = 2;
+    // Per-operation statement timeouts in seconds (0 = none) and the row cap for ad-hoc queries.
+    static final int PAGE_TIMEOUT_SECONDS = Integer.getInteger("fxdb.pageTimeoutSeconds", 30);
+    static final int WRITE_TIMEOUT_SECONDS = Integer.getInteger("fxdb.writeTimeoutSeconds", 120);
+    static final int QUERY_TIMEOUT_SECONDS = Integer.getInteger("fxdb.queryTimeoutSeconds", 300);
+    static final int MAX_QUERY_ROWS = Integer.getInteger("fxdb.maxQueryRows", 1_000_000);
+    // Tables served from local snapshots (-Dfxdb.snapshotTables=DEPT,SALGRADE); none by default.
+    private static final Set<String> SNAPSHOT_TABLES = Arrays.stream(System.getProperty("fxdb.snapshotTables", "").split(","))
+            .map(String::trim).filter(name -> !name.isEmpty()).map(String::toUpperCase).collect(Collectors.toSet());
+    private static final int SNAPSHOT_MAX_AGE_SECONDS = Integer.getInteger("fxdb.snapshotMaxAgeSeconds", 300);
+    private static final int SNAPSHOT_MAX_ROWS = Integer.getInteger("fxdb.snapshotMaxRows", 100_000);
+    // Columns that change on every write; live refresh compares these instead of hashing whole rows.
+    private static final List<String> VERSION_COLUMNS =
+            Arrays.asList(System.getProperty("fxdb.versionColumns", "updated_at,last_modified,row_version").toUpperCase().split("\\s*,\\s*"));
+    // A single write statement's verb and target list, i.e. everything up to the keyword that ends the list.
+    // Targets may be schema-qualified, quoted, aliased and (UPDATE, DELETE, DROP, TRUNCATE) comma-separated.
+    private static final Pattern WRITE_TARGET = Pattern.compile(
+            "^(?=[^;]*;?\\s*$)\\s*(?:INSERT\\s+(?:IGNORE\\s+)?INTO|REPLACE\\s+INTO|UPDATE(?:\\s+IGNORE)?|DELETE\\s+FROM"
+                    + "|TRUNCATE(?:\\s+TABLE)?|ALTER\\s+TABLE|DROP\\s+TABLE(?:\\s+IF\\s+EXISTS)?|CREATE\\s+TABLE(?:\\s+IF\\s+NOT\\s+EXISTS)?)\\s+"
+                    + "(.+?)(?:\\s*\\(|\\s+(?:SET|VALUES?|SELECT|WHERE|USING|ORDER|LIMIT|LIKE|AS|ADD|DROP|MODIFY|CHANGE"
+                    + "|RENAME|ALTER|CASCADE|RESTRICT)\\b|\\s*;?\\s*$)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    // One entry of a target list: optional schema, then the table, then whatever alias follows.
+    private static final Pattern TARGET_NAME = Pattern.compile(
+            "\\s*(?:(?:`[^`]*`|\"[^\"]*\"|[\\w$]+)\\s*\\.\\s*)*(`[^`]*`|\"[^\"]*\"|[\\w$]+)(?:\\s+(?:AS\\s+)?[\\w$]+)?\\s*");
+    private static final String LIKE_PREFIX = " LIKE ? ESCAPE '!'";
+    private static final Pattern SET_TARGET = Pattern.compile(
+            "^\\s*(?:(?:`[^`]+`|\"[^\"]+\"|\\w+)\\s*\\.\\s*)*(`[^`]+`|\"[^\"]+\"|\\w+)\\s*=");
+    private static final Pattern MULTI_TABLE = Pattern.compile("\\bJOIN\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DDL = Pattern.compile("^\\s*(?:ALTER|DROP|CREATE)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern QUERY = Pattern.compile("^\\s*(?:SELECT|WITH|\\()", Pattern.CASE_INSENSITIVE);
+
+    private final QueryStats queryStats = new QueryStats(Paths.get("slow-query.log"), Long.getLong("fxdb.slowQueryMillis", 500));
+    private final ConnectionPool pool = new ConnectionPool(CONFIG.url, CONFIG.user, CONFIG.password, POOL_SIZE, STATEMENT_CACHE_SIZE, queryStats);
+    private final QueryResultCache resultCache = new QueryResultCache(RESULT_CACHE_BYTES);
+    private final SnapshotStore snapshots = new SnapshotStore(pool, Paths.get(System.getProperty("fxdb.snapshotDir", "fxdb-snapshots")),
+            SNAPSHOT_TABLES, SNAPSHOT_MAX_AGE_SECONDS * 1000L, SNAPSHOT_MAX_ROWS, PAGE_TIMEOUT_SECONDS);
+    private final Map<String, Set<String>> referencingTables = new ConcurrentHashMap<>();
+    // Ad-hoc statements in flight, so cancelRunningQueries() can reach them from another thread.
+    private final Map<Statement, RunningQuery> runningQueries = new ConcurrentHashMap<>();
+    // Runs the async API. A thread per blocked call, like virtual threads would give on newer JDKs;
+    // the connection pool is what actually bounds the number of queries in flight.
+    private final ExecutorService asyncExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "db-async");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ThreadPoolExecutor prefetchExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(PREFETCH_QUEUE_SIZE), runnable -> {
+        Thread thread = new Thread(runnable, "db-prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardOldestPolicy());
+    private final Map<String, Set<String>> indexedColumns = new ConcurrentHashMap<>();
+    private final MetricsRegistry.Counter prefetchesRun =
+            MetricsRegistry.DEFAULT.counter("db_prefetch_total", "Table pages fetched ahead of being shown.");
+    private final MetricsRegistry.Counter prefetchesSkipped =
+            MetricsRegistry.DEFAULT.counter("db_prefetch_skipped_total", "Prefetches dropped because the pool was busy or they failed.");
+
+    // Ad-hoc query results larger than this (estimated heap bytes) are moved off-heap.
+    private long spillThresholdBytes = Long.getLong("fxdb.spillThresholdBytes", 32L * 1024 * 1024);
+
+    DatabaseHelper() {
+        queryStats.registerMetrics(MetricsRegistry.DEFAULT);
+        pool.registerMetrics(MetricsRegistry.DEFAULT);
+        resultCache.registerMetrics(MetricsRegistry.DEFAULT);
+    }
+
+    static class TableData implements AutoCloseable {
         final List<String> headers;
         final ObservableList<ObservableList<String>> rows;
+        private final OffHeapRowStore store;
+        boolean hasMoreRows; // set by getTablePage when another page follows, and when an ad-hoc result hit MAX_QUERY_ROWS
 
         TableData(List<String> headers, ObservableList<ObservableList<String>> rows) {
+            this(headers, rows, null);
+        }
+
+        TableData(List<String> headers, ObservableList<ObservableList<String>> rows, OffHeapRowStore store) {
             this.headers = headers;
             this.rows = rows;
+            this.store = store;
+        }
+
+        boolean isOffHeap() {
+            return store != null;
+        }
+
+        // Frees the off-heap buffers (if any); the rows must not be read afterwards.
+        @Override
+        public void close() {
+            if (store != null) {
+                store.close();
+            }
+        }
+    }
+
+    private static class RunningQuery {
+        final ConnectionPool.PooledConnection conn;
+        final Thread thread; // the caller that started it
+
+        RunningQuery(ConnectionPool.PooledConnection conn, Thread thread) {
+            this.conn = conn;
+            this.thread = thread;
+        }
+    }
+
+    // Primary key and version (a version column, or a hash of the row) of each row in a page window, in page order.
+    static class PageVersions {
+        final Map<String, String> versions;
+        final boolean hasMoreRows;
+
+        PageVersions(Map<String, String> versions, boolean hasMoreRows) {
+            this.versions = versions;
+            this.hasMoreRows = hasMoreRows;
+        }
+
+        // Same rows in the same order; otherwise rows were inserted, deleted or moved and the page needs a reload.
+        boolean sameRows(PageVersions other) {
+            return hasMoreRows == other.hasMoreRows && new ArrayList<>(versions.keySet()).equals(new ArrayList<>(other.versions.keySet()));
+        }
+
+        Set<String> changedSince(PageVersions other) {
+            Set<String> changed = new LinkedHashSet<>();
+            versions.forEach((key, version) -> {
+                if (!Objects.equals(version, other.versions.get(key))) changed.add(key);
+            });
+            return changed;
+        }
+    }
+
+    // Rows an UPDATE or DELETE changed, and their keys when there were few enough to patch the grid with.
+    static class KeyedWrite {
+        final int rowsAffected;
+        final List<String> keys;
+
+        KeyedWrite(int rowsAffected, List<String> keys) {
+            this.rowsAffected = rowsAffected;
+            this.keys = keys;
+        }
+    }
+
+    // One result of a script: a result set, an update count, or the error that stopped the script.
+    static class ScriptResult implements AutoCloseable {
+        final int index; // 1-based position among the script's results
+        final TableData data;
+        final long updateCount;
+        final String error;
+        final long elapsedNanos;
+
+        ScriptResult(int index, TableData data, long updateCount, String error, long elapsedNanos) {
+            this.index = index;
+            this.data = data;
+            this.updateCount = updateCount;
+            this.error = error;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public void close() {
+            if (data != null) {
+                data.close();
+            }
         }
     }
 
-    private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(JDBC_URL, USER, PASSWORD);
+    // One page of a table, narrowed by per-column prefix filters and sorted on one column.
+    static class TableQuery {
+        final String tableName;
+        final Map<String, String> filters;
+        final String sortColumn; // null keeps the table's natural order
+        final boolean ascending;
+        final int offset;
+        final int limit;
+
+        TableQuery(String tableName, Map<String, String> filters, String sortColumn, boolean ascending, int offset, int limit) {
+            this.tableName = tableName;
+            this.filters = Collections.unmodifiableMap(new LinkedHashMap<>(filters));
+            this.sortColumn = sortColumn;
+            this.ascending = ascending;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        TableQuery withFilters(Map<String, String> newFilters) {
+            return new TableQuery(tableName, newFilters, sortColumn, ascending, 0, limit);
+        }
+
+        TableQuery withSort(String newSortColumn, boolean newAscending) {
+            return new TableQuery(tableName, filters, newSortColumn, newAscending, 0, limit);
+        }
+
+        TableQuery withOffset(int newOffset) {
+            return new TableQuery(tableName, filters, sortColumn, ascending, Math.max(0, newOffset), limit);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TableQuery)) return false;
+            TableQuery other = (TableQuery) o;
+            return tableName.equals(other.tableName) && filters.equals(other.filters)
+                    && Objects.equals(sortColumn, other.sortColumn) && ascending == other.ascending
+                    && offset == other.offset && limit == other.limit;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tableName, filters, sortColumn, ascending, offset, limit);
+        }
+    }
+
+    // total is -1 when it is not known up front.
+    interface ProgressListener {
+        void onProgress(long done, long total);
+    }
+
+    static class CellEdit {
+        final String pkValue;
+        final String columnName;
+        final String newValue;
+
+        CellEdit(String pkValue, String columnName, String newValue) {
+            this.pkValue = pkValue;
+            this.columnName = columnName;
+            this.newValue = newValue;
+        }
+    }
+
+    public void setSpillThresholdBytes(long spillThresholdBytes) {
+        this.spillThresholdBytes = spillThresholdBytes;
+    }
+
+    private ConnectionPool.PooledConnection getConnection() throws SQLException {
+        return pool.acquire();
+    }
+
+    public String getResultCacheStats() {
+        return resultCache.stats();
+    }
+
+    // Timings of every statement run through the pool, plus the slow-query threshold.
+    public QueryStats getQueryStats() {
+        return queryStats;
+    }
+
+    // For changes made outside this helper (other processes, console manager).
+    public void invalidateResultCache() {
+        resultCache.invalidateAll();
+        snapshots.invalidateAll();
+        indexedColumns.clear();
+    }
+
+    // For a table seen to change outside this helper.
+    public void invalidateResultCache(String tableName) {
+        invalidateTable(tableName);
+    }
+
+    public String getStatementCacheStats() {
+        return "Statement cache: " + StatementCache.formatHitRate(pool.getStatementCacheHits(), pool.getStatementCacheMisses());
+    }
+
+    public void close() {
+        prefetchExecutor.shutdownNow();
+        snapshots.close();
+        asyncExecutor.shutdownNow();
+        pool.close();
+        MetricsRegistry.DEFAULT.unregister(queryStats);
+        MetricsRegistry.DEFAULT.unregister(pool);
+        MetricsRegistry.DEFAULT.unregister(resultCache);
     }
 
     public List<String> getTableNames() throws SQLException {
         List<String> tableNames = new ArrayList<>();
-        try (Connection conn = getConnection()) {
+        try (ConnectionPool.PooledConnection pooled = getConnection()) {
+            Connection conn = pooled.connection();
             DatabaseMetaData metaData = conn.getMetaData();
-            ResultSet rs = metaData.getTables(conn.getCatalog(), null, "%", new String[]{"TABLE"});
-            while (rs.next()) {
-                tableNames.add(rs.getString("TABLE_NAME"));
+            try (ResultSet rs = metaData.getTables(conn.getCatalog(), null, "%", CONFIG.dialect.tableTypes())) {
+                while (rs.next()) {
+                    tableNames.add(rs.getString("TABLE_NAME"));
+                }
             }
         }
         return tableNames;
     }
 
     public List<String> getColumnNames(String tableName) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = getConnection()) {
+            return getColumnNames(conn, tableName);
+        }
+    }
+
+    private List<String> getColumnNames(ConnectionPool.PooledConnection conn, String tableName) throws SQLException {
         List<String> columnNames = new ArrayList<>();
-        try (Connection conn = getConnection()) {
-            String sql = "SELECT * FROM " + tableName + " LIMIT 0";
-            try (PreparedStatement pstmt = conn.prepareStatement(sql); ResultSet rs = pstmt.executeQuery()) {
-                ResultSetMetaData metaData = rs.getMetaData();
-                for (int i = 1; i <= metaData.getColumnCount(); i++) {
-                    columnNames.add(metaData.getColumnName(i));
-                }
+        String sql = "SELECT * FROM " + tableName + " WHERE 1 = 0";
+        try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                columnNames.add(metaData.getColumnName(i));
             }
         }
         return columnNames;
@@ -56,8 +355,8 @@ class DatabaseHelper {
         List<String> headers = new ArrayList<>();
         ObservableList<ObservableList<String>> data = FXCollections.observableArrayList();
         String sql = "SELECT * FROM " + tableName + "";
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
+        try (ConnectionPool.PooledConnection conn = getConnection();
+             Statement stmt = conn.connection().createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             ResultSetMetaData metaData = rs.getMetaData();
             for (int i = 1; i <= metaData.getColumnCount(); i++) {
@@ -74,7 +373,310 @@ class DatabaseHelper {
         return new TableData(headers, data);
     }
 
-    public void insertRow(String tableName, Map<String, String> values) throws SQLException {
+    interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    // Async variants complete on a db-async thread; hop to the UI thread with whenCompleteAsync(..., Platform::runLater).
+    public CompletableFuture<List<String>> getTableNamesAsync() {
+        return supplyAsync(this::getTableNames);
+    }
+
+    public CompletableFuture<TableData> getTablePageAsync(TableQuery query) {
+        return supplyAsync(() -> getTablePage(query));
+    }
+
+    public CompletableFuture<Set<String>> getIndexedColumnsAsync(String tableName) {
+        return supplyAsync(() -> getIndexedColumns(tableName));
+    }
+
+    public CompletableFuture<PageVersions> getPageVersionsAsync(TableQuery query, String pkColumn) {
+        return supplyAsync(() -> getPageVersions(query, pkColumn));
+    }
+
+    public CompletableFuture<TableData> getRowsByKeysAsync(TableQuery query, String pkColumn, Collection<String> pkValues) {
+        return supplyAsync(() -> getRowsByKeys(query, pkColumn, pkValues));
+    }
+
+    public CompletableFuture<TableData> executeGenericQueryAsync(String sql) {
+        return supplyAsync(() -> executeGenericQuery(sql));
+    }
+
+    // Rows of a query in batches of batchSize, read from the server only as fast as the subscriber requests them.
+    // Only a single SELECT is accepted, and it runs on a read-only session.
+    public Flow.Publisher<QueryPublisher.RowBatch> streamQuery(String sql, int batchSize) {
+        if (!isSingleQuery(sql)) {
+            throw new IllegalArgumentException("Only a single SELECT statement can be streamed.");
+        }
+        return new QueryPublisher(pool, sql, batchSize, asyncExecutor);
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(SqlCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        asyncExecutor.execute(() -> {
+            try {
+                future.complete(call.call());
+            } catch (SQLException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    public TableData getTablePage(TableQuery query) throws SQLException {
+        if (snapshots.covers(query.tableName)) {
+            TableData page = snapshots.getPage(query);
+            if (page != null) {
+                return page;
+            }
+        }
+        TableData cached = resultCache.get(query);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = resultCache.generation(query.tableName);
+        try (ConnectionPool.PooledConnection conn = getConnection()) {
+            return fetchPage(conn, query, generation);
+        } catch (SQLException e) {
+            TableData offline = snapshots.covers(query.tableName) ? snapshots.getOfflinePage(query) : null;
+            if (offline == null) throw e;
+            return offline;
+        }
+    }
+
+    // Speculatively loads a page and the table's index metadata into the caches, e.g. while the user hovers a
+    // table, so showing it next is instant. Best effort: never waits for a connection and drops work when busy.
+    public void prefetchTable(TableQuery query) {
+        if (snapshots.covers(query.tableName) || resultCache.contains(query)) {
+            return;
+        }
+        prefetchExecutor.execute(() -> {
+            if (resultCache.contains(query)) {
+                return; // asked for twice while queued; the first run already cached it
+            }
+            long generation = resultCache.generation(query.tableName);
+            try (ConnectionPool.PooledConnection conn = pool.tryAcquire(PREFETCH_RESERVE)) {
+                if (conn == null) {
+                    prefetchesSkipped.increment();
+                    return;
+                }
+                fetchPage(conn, query, generation);
+                if (!indexedColumns.containsKey(query.tableName.toUpperCase())) {
+                    getIndexedColumns(conn, query.tableName);
+                }
+                prefetchesRun.increment();
+            } catch (SQLException | RuntimeException e) {
+                prefetchesSkipped.increment(); // the real load will report it if it matters
+            }
+        });
+    }
+
+    private TableData fetchPage(ConnectionPool.PooledConnection conn, TableQuery query, long generation) throws SQLException {
+        PreparedStatement pstmt = preparePage(conn, query, getColumnNames(conn, query.tableName), "*");
+        List<String> headers = new ArrayList<>();
+        ObservableList<ObservableList<String>> data = FXCollections.observableArrayList();
+        boolean hasMore = false;
+        try (ResultSet rs = pstmt.executeQuery()) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int c = 1; c <= metaData.getColumnCount(); c++) {
+                headers.add(metaData.getColumnName(c));
+            }
+            while (rs.next()) {
+                if (data.size() == query.limit) {
+                    hasMore = true;
+                    break;
+                }
+                ObservableList<String> row = FXCollections.observableArrayList();
+                for (int c = 1; c <= metaData.getColumnCount(); c++) {
+                    row.add(rs.getString(c));
+                }
+                data.add(row);
+            }
+        }
+        TableData page = new TableData(headers, data);
+        page.hasMoreRows = hasMore;
+        resultCache.put(query, page, generation);
+        return page;
+    }
+
+    // The page's WHERE, ORDER BY and window with the given select list. Filters and sort column are checked
+    // against the table's real columns before they go into SQL; filter values are bound as parameters.
+    // Filters are prefix matches so an index on the column can be used. Rows are always ordered by the key,
+    // after the sort column if there is one, so consecutive pages neither repeat nor skip rows and a
+    // version poll sees the rows in the same order as the page.
+    private PreparedStatement preparePage(ConnectionPool.PooledConnection conn, TableQuery query, List<String> columns,
+                                          String selectList) throws SQLException {
+        Set<String> knownColumns = knownColumns(columns);
+        List<String> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(selectList).append(" FROM ").append(query.tableName)
+                .append(filterWhere(knownColumns, query, params));
+        String pkColumn = columns.get(0);
+        sql.append(" ORDER BY ");
+        if (query.sortColumn != null) {
+            requireColumn(knownColumns, query.sortColumn);
+            sql.append(query.sortColumn).append(query.ascending ? " ASC" : " DESC");
+            if (!query.sortColumn.equalsIgnoreCase(pkColumn)) sql.append(", ").append(pkColumn);
+        } else {
+            sql.append(pkColumn);
+        }
+        sql.append(" LIMIT ? OFFSET ?"); // one extra row tells us whether a next page exists
+
+        PreparedStatement pstmt = conn.prepare(sql.toString());
+        pstmt.setQueryTimeout(PAGE_TIMEOUT_SECONDS); // cached statements keep the last caller's settings
+        int i = 1;
+        for (String param : params) {
+            pstmt.setString(i++, param);
+        }
+        pstmt.setInt(i++, query.limit + 1);
+        pstmt.setInt(i, query.offset);
+        return pstmt;
+    }
+
+    // Rows the query's filters match on all of its pages.
+    public long countRows(TableQuery query) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = getConnection()) {
+            List<String> params = new ArrayList<>();
+            String where = filterWhere(knownColumns(getColumnNames(conn, query.tableName)), query, params);
+            PreparedStatement pstmt = conn.prepare("SELECT COUNT(*) FROM " + query.tableName + where);
+            pstmt.setQueryTimeout(PAGE_TIMEOUT_SECONDS);
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setString(i + 1, params.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    public CompletableFuture<Long> countRowsAsync(TableQuery query) {
+        return supplyAsync(() -> countRows(query));
+    }
+
+    // Deletes every row the query's filters match, on any page, with one statement instead of a key list.
+    public int deleteMatchingRows(TableQuery query) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = getConnection()) {
+            List<String> params = new ArrayList<>();
+            String where = filterWhere(knownColumns(getColumnNames(conn, query.tableName)), query, params);
+            PreparedStatement pstmt = conn.prepare("DELETE FROM " + query.tableName + where);
+            pstmt.setQueryTimeout(WRITE_TIMEOUT_SECONDS);
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setString(i + 1, params.get(i));
+            }
+            return pstmt.executeUpdate();
+        } finally {
+            invalidateTable(query.tableName);
+        }
+    }
+
+    private static Set<String> knownColumns(List<String> columns) {
+        Set<String> known = new HashSet<>();
+        for (String column : columns) {
+            known.add(column.toUpperCase());
+        }
+        return known;
+    }
+
+    // Keys and versions of the rows a page query would return, for cheap change polling: the server sends
+    // a key and a version (or a row hash) per row instead of the rows. Never served from the result cache.
+    public PageVersions getPageVersions(TableQuery query, String pkColumn) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = getConnection()) {
+            List<String> columns = getColumnNames(conn, query.tableName);
+            String version = null;
+            for (String column : columns) {
+                if (VERSION_COLUMNS.contains(column.toUpperCase())) {
+                    version = column;
+                    break;
+                }
+            }
+            if (version == null) {
+                version = CONFIG.dialect.rowHashExpression(columns);
+            }
+            Map<String, String> versions = new LinkedHashMap<>();
+            boolean hasMore = false;
+            // Engines without a server-side row hash send whole rows, hashed here.
+            String selectList = version != null ? pkColumn + ", " + version : "*";
+            try (ResultSet rs = preparePage(conn, query, columns, selectList).executeQuery()) {
+                while (rs.next()) {
+                    if (versions.size() == query.limit) {
+                        hasMore = true;
+                        break;
+                    }
+                    if (version != null) {
+                        versions.put(rs.getString(1), rs.getString(2));
+                    } else {
+                        versions.put(rs.getString(pkColumn), rowHash(rs));
+                    }
+                }
+            }
+            return new PageVersions(versions, hasMore);
+        }
+    }
+
+    private static String rowHash(ResultSet rs) throws SQLException {
+        CRC32 crc = new CRC32();
+        for (int c = 1; c <= rs.getMetaData().getColumnCount(); c++) {
+            String value = rs.getString(c);
+            crc.update(value == null ? new byte[]{1} : value.getBytes(StandardCharsets.UTF_8));
+            crc.update(0);
+        }
+        return Long.toString(crc.getValue());
+    }
+
+    // Upper-cased names of the columns that lead at least one index of the table.
+    // Cached until DDL (or a statement we cannot attribute) runs through this helper.
+    public Set<String> getIndexedColumns(String tableName) throws SQLException {
+        Set<String> cached = indexedColumns.get(tableName.toUpperCase());
+        if (cached != null) {
+            return cached;
+        }
+        try (ConnectionPool.PooledConnection pooled = getConnection()) {
+            return getIndexedColumns(pooled, tableName);
+        }
+    }
+
+    private Set<String> getIndexedColumns(ConnectionPool.PooledConnection pooled, String tableName) throws SQLException {
+        Set<String> indexed = new HashSet<>();
+        Connection conn = pooled.connection();
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, tableName, false, true)) {
+            while (rs.next()) {
+                String column = rs.getString("COLUMN_NAME");
+                if (column != null && rs.getShort("ORDINAL_POSITION") == 1) {
+                    indexed.add(column.toUpperCase());
+                }
+            }
+        }
+        indexed = Collections.unmodifiableSet(indexed);
+        indexedColumns.put(tableName.toUpperCase(), indexed);
+        return indexed;
+    }
+
+    // The query's filters as a WHERE clause (empty without filters); their values are added to params.
+    private static String filterWhere(Set<String> knownColumns, TableQuery query, List<String> params) throws SQLException {
+        StringBuilder where = new StringBuilder();
+        String separator = " WHERE ";
+        for (Map.Entry<String, String> filter : query.filters.entrySet()) {
+            requireColumn(knownColumns, filter.getKey());
+            where.append(separator).append(filter.getKey()).append(LIKE_PREFIX);
+            params.add(likePrefix(filter.getValue()));
+            separator = " AND ";
+        }
+        return where.toString();
+    }
+
+    // Filter values are literal prefixes. '!' is the escape character because a backslash in an ESCAPE
+    // literal means different things to MySQL and to the standard-SQL engines.
+    private static String likePrefix(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
+    private static void requireColumn(Set<String> knownColumns, String column) throws SQLException {
+        if (!knownColumns.contains(column.toUpperCase())) {
+            throw new SQLException("Unknown column: " + column);
+        }
+    }
+
+    // Returns the generated key of the new row, or null when the table does not generate one.
+    public String insertRow(String tableName, Map<String, String> values) throws SQLException {
         StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
         StringBuilder placeholders = new StringBuilder();
         for (String colName : values.keySet()) {
@@ -84,62 +686,560 @@ class DatabaseHelper {
         sql.setLength(sql.length() - 1);
         placeholders.setLength(placeholders.length() - 1);
         sql.append(") VALUES (").append(placeholders).append(")");
-        try (Connection conn = getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+        try (ConnectionPool.PooledConnection conn = getConnection()) {
+            PreparedStatement pstmt = conn.prepare(sql.toString(), Statement.RETURN_GENERATED_KEYS);
+            pstmt.setQueryTimeout(WRITE_TIMEOUT_SECONDS);
             int i = 1;
             for (String value : values.values()) {
                 pstmt.setString(i++, value);
             }
             pstmt.executeUpdate();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                return keys.next() ? keys.getString(1) : null;
+            }
+        } finally {
+            invalidateTable(tableName);
+        }
+    }
+
+    // Null when the WHERE matches more than maxKeys rows; patching that many is no cheaper than a reload.
+    // Runs an UPDATE or DELETE whose WHERE is whereClause and returns the keys of the rows it hit, or null keys
+    // past maxKeys. The keys are read with a locking read in the write's own transaction, so no row can start
+    // or stop matching in between.
+    public KeyedWrite executeWriteWhere(String sql, String tableName, String pkColumn, String whereClause, int maxKeys)
+            throws SQLException {
+        List<String> keys = new ArrayList<>();
+        String keySql = "SELECT " + pkColumn + " FROM " + tableName + " WHERE " + whereClause + CONFIG.dialect.lockingReadSuffix();
+        try (ConnectionPool.PooledConnection conn = getConnection()) {
+            Connection connection = conn.connection();
+            connection.setAutoCommit(false);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.setQueryTimeout(WRITE_TIMEOUT_SECONDS);
+                stmt.setMaxRows(maxKeys + 1);
+                try (ResultSet rs = stmt.executeQuery(keySql)) {
+                    while (rs.next()) {
+                        keys.add(rs.getString(1));
+                    }
+                }
+                stmt.setMaxRows(0);
+                int rowsAffected = stmt.executeUpdate(sql);
+                connection.commit();
+                return new KeyedWrite(rowsAffected, keys.size() > maxKeys ? null : keys);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            invalidateCacheFor(sql);
         }
     }
 
+    // Whether a SET list (a = 1, b = (SELECT ...)) assigns the column, qualified or quoted or not. Only the
+    // targets of top-level assignments count; a list it cannot read is assumed to assign it.
+    static boolean setsColumn(String setClause, String column) {
+        List<String> assignments = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        char quote = 0;
+        for (int i = 0; i < setClause.length(); i++) {
+            char c = setClause.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                assignments.add(setClause.substring(start, i));
+                start = i + 1;
+            }
+        }
+        assignments.add(setClause.substring(start));
+        for (String assignment : assignments) {
+            Matcher target = SET_TARGET.matcher(assignment);
+            if (!target.find()) {
+                return true;
+            }
+            String name = target.group(1);
+            if (name.charAt(0) == '`' || name.charAt(0) == '"') {
+                name = name.substring(1, name.length() - 1);
+            }
+            if (name.equalsIgnoreCase(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public int executeUpdateOrDelete(String sql) throws SQLException {
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+        try (ConnectionPool.PooledConnection conn = getConnection(); Statement stmt = conn.connection().createStatement()) {
+            stmt.setQueryTimeout(WRITE_TIMEOUT_SECONDS);
             return stmt.executeUpdate(sql);
+        } finally {
+            invalidateCacheFor(sql);
+        }
+    }
+
+    // Drops cached pages of the table a statement writes to; anything we cannot attribute clears the cache.
+    private void invalidateCacheFor(String sql) {
+        List<String> tables = writeTargets(sql);
+        if (tables != null) {
+            boolean ddl = DDL.matcher(sql).find();
+            if (ddl) {
+                referencingTables.clear(); // foreign keys may have changed
+            }
+            for (String table : tables) {
+                if (ddl) indexedColumns.remove(table.toUpperCase());
+                invalidateTable(table);
+            }
+        } else {
+            referencingTables.clear();
+            indexedColumns.clear();
+            resultCache.invalidateAll();
+            snapshots.invalidateAll();
+        }
+    }
+
+    // The unqualified names of the tables a write statement changes, or null when it cannot be told.
+    static List<String> writeTargets(String sql) {
+        Matcher matcher = WRITE_TARGET.matcher(sql);
+        if (!matcher.find() || MULTI_TABLE.matcher(sql).find()) {
+            return null;
+        }
+        List<String> tables = new ArrayList<>();
+        for (String target : matcher.group(1).split(",")) {
+            Matcher name = TARGET_NAME.matcher(target);
+            if (!name.matches()) {
+                return null;
+            }
+            String table = name.group(1);
+            tables.add(table.charAt(0) == '`' || table.charAt(0) == '"' ? table.substring(1, table.length() - 1) : table);
+        }
+        return tables;
+    }
+
+    // Also drops tables whose foreign keys point at this one, since cascades change them too.
+    private void invalidateTable(String tableName) {
+        resultCache.invalidateTable(tableName);
+        snapshots.invalidate(tableName);
+        for (String child : getReferencingTables(tableName)) {
+            resultCache.invalidateTable(child);
+            snapshots.invalidate(child);
+        }
+    }
+
+    private Set<String> getReferencingTables(String tableName) {
+        Set<String> known = referencingTables.get(tableName.toUpperCase());
+        if (known != null) {
+            return known;
+        }
+        Set<String> children = new HashSet<>();
+        try (ConnectionPool.PooledConnection pooled = getConnection()) {
+            Connection conn = pooled.connection();
+            try (ResultSet rs = conn.getMetaData().getExportedKeys(conn.getCatalog(), null, tableName)) {
+                while (rs.next()) {
+                    children.add(rs.getString("FKTABLE_NAME"));
+                }
+            }
+        } catch (SQLException e) {
+            resultCache.invalidateAll(); // cannot tell what depends on it, so play safe
+            snapshots.invalidateAll();
+            return children;
+        }
+        referencingTables.put(tableName.toUpperCase(), children);
+        return children;
+    }
+
+    // Streams the whole table to CSV; integer-keyed tables the dialect can read-lock go as concurrent key ranges.
+    public long exportTable(String tableName, Path target, boolean gzip, ProgressListener progress) throws SQLException, IOException {
+        String pkColumn = getColumnNames(tableName).get(0);
+        return new TableExporter(pool).exportTable(tableName, pkColumn, target, EXPORT_PARALLELISM, gzip, progress);
+    }
+
+    public long exportQuery(String sql, Path target, boolean gzip) throws SQLException, IOException {
+        return new TableExporter(pool).exportQuery(sql, target, gzip);
+    }
+
+    // Bulk-loads a CSV file whose header names the target columns; bad rows go to an error file.
+    public CsvImporter.Result importCsv(String tableName, Path csvFile, ProgressListener progress) throws SQLException, IOException {
+        try {
+            return new CsvImporter(pool, IMPORT_BATCH_SIZE, IMPORT_COMMIT_SIZE, POOL_SIZE - 1).importCsv(tableName, csvFile, progress);
+        } finally {
+            invalidateTable(tableName);
         }
     }
 
     public TableData executeGenericQuery(String sql) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = getConnection(); Statement stmt = startAdHoc(conn)) {
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                return readResult(rs);
+            } finally {
+                runningQueries.remove(stmt);
+            }
+        }
+    }
+
+    // Ad-hoc statements get the query timeout and the row cap, and can be cancelled until removed from runningQueries.
+    private Statement startAdHoc(ConnectionPool.PooledConnection conn) throws SQLException {
+        Statement stmt = conn.connection().createStatement();
+        stmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+        stmt.setMaxRows(MAX_QUERY_ROWS + 1); // one extra row tells readResult the result was cut off
+        runningQueries.put(stmt, new RunningQuery(conn, Thread.currentThread()));
+        return stmt;
+    }
+
+    // Asks the server to stop every ad-hoc query, script or EXPLAIN ANALYZE in flight; returns how many were signalled.
+    // The cancelled call fails with the server's "interrupted" error and its connection is closed, not reused.
+    public int cancelRunningQueries() {
+        return cancelRunningQueries(null);
+    }
+
+    // Only the queries started on the given thread (null for all), e.g. one window's script worker.
+    public int cancelRunningQueries(Thread startedBy) {
+        int cancelled = 0;
+        for (Map.Entry<Statement, RunningQuery> running : runningQueries.entrySet()) {
+            if (startedBy != null && running.getValue().thread != startedBy) continue;
+            running.getValue().conn.discardOnRelease();
+            try {
+                running.getKey().cancel();
+                cancelled++;
+            } catch (SQLException ignored) {
+                // Finished (and closed) in the meantime.
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Runs every statement in the buffer over one connection and one round trip, collecting each result
+     * set and update count in order with the time it took. An error ends the script (the server stops there)
+     * and is returned as the last result, after the results that did complete.
+     */
+    public List<ScriptResult> executeScript(String sql) throws SQLException {
+        List<ScriptResult> results = new ArrayList<>();
+        try (ConnectionPool.PooledConnection conn = getConnection(); Statement stmt = startAdHoc(conn)) {
+            long start = System.nanoTime();
+            try {
+                // Engines without multi-statement support get the script one statement at a time.
+                List<String> statements = CONFIG.dialect.supportsMultiStatementScripts()
+                        ? Collections.singletonList(sql) : splitStatements(sql);
+                for (String statement : statements) {
+                    boolean isResultSet = stmt.execute(statement);
+                    while (true) {
+                        TableData data = null;
+                        long updateCount = -1;
+                        if (isResultSet) {
+                            try (ResultSet rs = stmt.getResultSet()) {
+                                data = readResult(rs);
+                            }
+                        } else {
+                            updateCount = stmt.getUpdateCount();
+                            if (updateCount == -1) break; // no more results
+                        }
+                        long now = System.nanoTime();
+                        results.add(new ScriptResult(results.size() + 1, data, updateCount, null, now - start));
+                        start = now;
+                        isResultSet = stmt.getMoreResults();
+                    }
+                }
+            } catch (SQLException e) {
+                results.add(new ScriptResult(results.size() + 1, null, -1, e.getMessage(), System.nanoTime() - start));
+            } catch (RuntimeException e) {
+                results.forEach(ScriptResult::close);
+                throw e;
+            } finally {
+                runningQueries.remove(stmt);
+            }
+        } finally {
+            // Anything but a pure query may have written; a failed statement may have written part of its work.
+            if (results.isEmpty() || results.stream().anyMatch(r -> r.data == null)) {
+                invalidateCacheFor(sql);
+            }
+        }
+        return results;
+    }
+
+    // One statement that produces a result set; a trailing semicolon is allowed.
+    static boolean isSingleQuery(String sql) {
+        List<String> statements = splitStatements(sql);
+        return statements.size() == 1 && QUERY.matcher(statements.get(0)).find();
+    }
+
+    // Splits on semicolons outside quotes and comments; empty statements are dropped.
+    static List<String> splitStatements(String sql) {
+        return splitStatements(sql, CONFIG.dialect);
+    }
+
+    // Backslash escapes in strings and # comments are only recognized where the dialect has them.
+    static List<String> splitStatements(String sql, SqlDialect dialect) {
+        boolean backslashEscapes = dialect.backslashEscapes();
+        boolean hashComments = dialect.hashComments();
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                current.append(c);
+                if (backslashEscapes && c == '\\' && quote != '`' && i + 1 < sql.length()) {
+                    current.append(sql.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+                current.append(c);
+            } else if (c == '-' && sql.startsWith("--", i) || hashComments && c == '#') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? sql.length() : end - 1;
+            } else if (c == '/' && sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? sql.length() : end + 1;
+            } else if (c == ';') {
+                addStatement(statements, current);
+            } else {
+                current.append(c);
+            }
+        }
+        addStatement(statements, current);
+        return statements;
+    }
+
+    private static void addStatement(List<String> statements, StringBuilder current) {
+        String statement = current.toString().trim();
+        if (!statement.isEmpty()) statements.add(statement);
+        current.setLength(0);
+    }
+
+    /**
+     * Plan of a single SELECT, with full scans flagged and candidate indexes suggested. ANALYZE really runs
+     * the query and adds actual timings; servers without tree output (before 8.0.16) get the classic plan.
+     */
+    public QueryPlan explain(String sql, boolean analyze) throws SQLException {
+        String query = sql.trim().replaceAll(";\\s*$", "");
+        if (!QUERY.matcher(query).find() || query.contains(";")) {
+            throw new SQLException("Only a single SELECT statement can be explained.");
+        }
+        String prefix = CONFIG.dialect.explainPrefix(analyze);
+        if (prefix == null) {
+            throw new SQLException((analyze ? "EXPLAIN ANALYZE" : "EXPLAIN") + " is not supported for " + CONFIG.dialect + ".");
+        }
+        QueryPlan plan;
+        try (ConnectionPool.PooledConnection conn = getConnection(); Statement stmt = startAdHoc(conn)) {
+            try (ResultSet rs = stmt.executeQuery(prefix + query)) {
+                StringBuilder tree = new StringBuilder();
+                while (rs.next()) {
+                    tree.append(rs.getString(rs.getMetaData().getColumnCount())).append('\n'); // SQLite puts the text last
+                }
+                plan = CONFIG.dialect == SqlDialect.MYSQL ? QueryPlan.fromTree(tree.toString()) : QueryPlan.fromText(tree.toString());
+            } catch (SQLException e) {
+                if (analyze || CONFIG.dialect != SqlDialect.MYSQL) throw e;
+                try (ResultSet rs = stmt.executeQuery("EXPLAIN " + query)) {
+                    plan = QueryPlan.fromTable(rs);
+                }
+            } finally {
+                runningQueries.remove(stmt);
+            }
+        }
+        IndexAdvisor.suggest(query, plan, this);
+        return plan;
+    }
+
+    // Materializes a result set, moving it off-heap once it grows past the spill threshold.
+    // Stops after MAX_QUERY_ROWS rows and marks the result as truncated.
+    private TableData readResult(ResultSet rs) throws SQLException {
         List<String> headers = new ArrayList<>();
         ObservableList<ObservableList<String>> data = FXCollections.observableArrayList();
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+        OffHeapRowStore store = null;
+        long heapBytes = 0;
+        long rowCount = 0;
+        boolean truncated = false;
+        try {
             ResultSetMetaData metaData = rs.getMetaData();
-            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            int columnCount = metaData.getColumnCount();
+            for (int i = 1; i <= columnCount; i++) {
                 headers.add(metaData.getColumnName(i));
             }
             while (rs.next()) {
+                if (rowCount++ == MAX_QUERY_ROWS) {
+                    truncated = true;
+                    break;
+                }
                 ObservableList<String> row = FXCollections.observableArrayList();
-                for (int i = 1; i <= metaData.getColumnCount(); i++) {
-                    row.add(rs.getString(i));
+                for (int i = 1; i <= columnCount; i++) {
+                    String value = rs.getString(i);
+                    row.add(value);
+                    heapBytes += value == null ? 8 : 40 + 2L * value.length();
+                }
+                if (store != null) {
+                    store.append(row);
+                } else {
+                    data.add(row);
+                    if (heapBytes > spillThresholdBytes) {
+                        // Threshold crossed: move what we have so far off-heap and keep streaming into it.
+                        store = new OffHeapRowStore(columnCount);
+                        for (ObservableList<String> heapRow : data) {
+                            store.append(heapRow);
+                        }
+                        data.clear();
+                    }
                 }
-                data.add(row);
             }
+        } catch (SQLException | RuntimeException e) {
+            if (store != null) store.close();
+            throw e;
         }
-        return new TableData(headers, data);
+        TableData result = store != null
+                ? new TableData(headers, FXCollections.observableList(store.asList()), store)
+                : new TableData(headers, data);
+        result.hasMoreRows = truncated;
+        return result;
     }
 
     public void updateCellValue(String tableName, String columnName, String newValue, String pkColumn, String pkValue) throws SQLException {
         String sql = "UPDATE " + tableName + " SET " + columnName + " = ? WHERE " + pkColumn + " = ?";
-        try (Connection conn = getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (ConnectionPool.PooledConnection conn = getConnection()) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setQueryTimeout(WRITE_TIMEOUT_SECONDS);
             pstmt.setString(1, newValue);
             pstmt.setString(2, pkValue);
             pstmt.executeUpdate();
+        } finally {
+            invalidateTable(tableName);
         }
     }
 
-    // THIS IS THE METHOD THAT PERFORMS THE MULTI-ROW DELETE
-    public void deleteMultipleRows(String tableName, String pkColumnName, List<String> pkValues) throws SQLException {
-        if (pkValues == null || pkValues.isEmpty()) {
+    // Applies all edits as JDBC batches (one per edited column) inside a single transaction.
+    public void updateCells(String tableName, String pkColumn, Collection<CellEdit> edits) throws SQLException {
+        if (edits.isEmpty()) {
             return;
         }
-        String placeholders = String.join(",", Collections.nCopies(pkValues.size(), "?"));
-        String sql = "DELETE FROM " + tableName + " WHERE " + pkColumnName + " IN (" + placeholders + ")";
+        Map<String, List<CellEdit>> editsByColumn = new LinkedHashMap<>();
+        for (CellEdit edit : edits) {
+            editsByColumn.computeIfAbsent(edit.columnName, k -> new ArrayList<>()).add(edit);
+        }
+        try (ConnectionPool.PooledConnection conn = getConnection()) {
+            Connection connection = conn.connection();
+            connection.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, List<CellEdit>> entry : editsByColumn.entrySet()) {
+                    PreparedStatement pstmt = conn.prepare("UPDATE " + tableName + " SET " + entry.getKey() + " = ? WHERE " + pkColumn + " = ?");
+                    pstmt.setQueryTimeout(WRITE_TIMEOUT_SECONDS);
+                    for (CellEdit edit : entry.getValue()) {
+                        pstmt.setString(1, edit.newValue);
+                        pstmt.setString(2, edit.pkValue);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            invalidateTable(tableName);
+        }
+    }
 
-        try (Connection conn = getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            for (int i = 0; i < pkValues.size(); i++) {
-                pstmt.setString(i + 1, pkValues.get(i));
+    // Re-reads just the given rows of the query's table; keys with no matching row, or whose row no longer
+    // passes the query's filters, are simply absent from the result.
+    public TableData getRowsByKeys(TableQuery query, String pkColumn, Collection<String> pkValues) throws SQLException {
+        List<String> headers = new ArrayList<>();
+        ObservableList<ObservableList<String>> data = FXCollections.observableArrayList();
+        if (pkValues.isEmpty()) {
+            return new TableData(headers, data);
+        }
+        List<String> keys = new ArrayList<>(new LinkedHashSet<>(pkValues)); // padding relies on duplicates being harmless
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(query.tableName)
+                .append(" WHERE ").append(pkColumn).append(" IN (").append(KEY_CHUNK_PLACEHOLDERS).append(")");
+        try (ConnectionPool.PooledConnection conn = getConnection()) {
+            if (!query.filters.isEmpty()) {
+                Set<String> knownColumns = knownColumns(getColumnNames(conn, query.tableName));
+                for (String column : query.filters.keySet()) {
+                    requireColumn(knownColumns, column);
+                    sql.append(" AND ").append(column).append(LIKE_PREFIX);
+                }
             }
-            pstmt.executeUpdate();
+            PreparedStatement pstmt = conn.prepare(sql.toString());
+            pstmt.setQueryTimeout(PAGE_TIMEOUT_SECONDS);
+            int i = KEY_CHUNK_SIZE + 1;
+            for (String value : query.filters.values()) {
+                pstmt.setString(i++, likePrefix(value));
+            }
+            for (int from = 0; from < keys.size(); from += KEY_CHUNK_SIZE) {
+                bindKeyChunk(pstmt, keys, from);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    if (headers.isEmpty()) {
+                        for (int c = 1; c <= metaData.getColumnCount(); c++) {
+                            headers.add(metaData.getColumnName(c));
+                        }
+                    }
+                    while (rs.next()) {
+                        ObservableList<String> row = FXCollections.observableArrayList();
+                        for (int c = 1; c <= metaData.getColumnCount(); c++) {
+                            row.add(rs.getString(c));
+                        }
+                        data.add(row);
+                    }
+                }
+            }
+        }
+        return new TableData(headers, data);
+    }
+
+    public int deleteMultipleRows(String tableName, String pkColumnName, List<String> pkValues) throws SQLException {
+        return deleteMultipleRows(tableName, pkColumnName, pkValues, null);
+    }
+
+    // THIS IS THE METHOD THAT PERFORMS THE MULTI-ROW DELETE
+    // Keys are deleted KEY_CHUNK_SIZE at a time through one cached statement, all in a single
+    // transaction, so any selection size uses the same statement shape and stays under packet limits.
+    public int deleteMultipleRows(String tableName, String pkColumnName, List<String> pkValues, ProgressListener progress) throws SQLException {
+        if (pkValues == null || pkValues.isEmpty()) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<>(new LinkedHashSet<>(pkValues));
+        String sql = "DELETE FROM " + tableName + " WHERE " + pkColumnName + " IN (" + KEY_CHUNK_PLACEHOLDERS + ")";
+        int deleted = 0;
+        try (ConnectionPool.PooledConnection conn = getConnection()) {
+            Connection connection = conn.connection();
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement pstmt = conn.prepare(sql);
+                pstmt.setQueryTimeout(WRITE_TIMEOUT_SECONDS);
+                for (int from = 0; from < keys.size(); from += KEY_CHUNK_SIZE) {
+                    bindKeyChunk(pstmt, keys, from);
+                    deleted += pstmt.executeUpdate();
+                    if (progress != null) {
+                        progress.onProgress(Math.min(from + KEY_CHUNK_SIZE, keys.size()), keys.size());
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            invalidateTable(tableName);
+        }
+        return deleted;
+    }
+
+    // Binds keys[from, from + KEY_CHUNK_SIZE); a short last chunk is padded by repeating its last key.
+    private static void bindKeyChunk(PreparedStatement pstmt, List<String> keys, int from) throws SQLException {
+        int to = Math.min(from + KEY_CHUNK_SIZE, keys.size());
+        for (int i = 0; i < KEY_CHUNK_SIZE; i++) {
+            pstmt.setString(i + 1, keys.get(Math.min(from + i, to - 1)));
         }
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -8,21 +9,27 @@ import java.util.Scanner;
 
 public class DatabaseManager {
     // Constants remain the same
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/fare?createDatabaseIfNotExist=true&allowMultiQueries=true";
-    private static final String DB_USER = "root";
-    private static final String DB_PASS = "Fareedha@1234"; // Replace with your actual password if needed
+    // Set with -Dfxdb.jdbcUrl / fxdb.user / fxdb.password or fxdb.properties; see DatabaseConfig.
+    private static final DatabaseConfig CONFIG = DatabaseConfig.get();
     private static final String SETUP_FILE = "javafiles.txt";
     private static final String INSERT_FILE = "dept.txt";
+    private static final int STATEMENT_CACHE_SIZE = 32;
+    private static final int IMPORT_WRITERS = 3;
+    private static final String SLOW_QUERY_LOG = "slow-query.log";
+    private static final int MAX_PRINTED_ROWS = Integer.getInteger("fxdb.maxPrintedRows", 1000);
 
     // The run method now correctly uses the passed-in scanner and manages resources properly.
     public static void run(Scanner scanner) {
         // Use try-with-resources to ensure the connection is always closed.
-        try (Connection connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS)) {
+        QueryStats queryStats = new QueryStats(Paths.get(SLOW_QUERY_LOG), Long.getLong("fxdb.slowQueryMillis", 500));
+        queryStats.registerMetrics(MetricsRegistry.DEFAULT);
+        try (Connection connection = queryStats.instrument(DriverManager.getConnection(CONFIG.url, CONFIG.user, CONFIG.password));
+             StatementCache statementCache = new StatementCache(connection, STATEMENT_CACHE_SIZE)) {
             System.out.println("✅ Database connection successful.");
             boolean keepRunning = true;
 
             while (keepRunning) {
-                System.out.println("\nChoose operation: SETUP / INSERT / READ / UPDATE / DELETE / EXIT");
+                System.out.println("\nChoose operation: SETUP / INSERT / READ / UPDATE / DELETE / EXPORT / IMPORT / STATS / EXIT");
                 // Use the shared scanner from MainApplication
                 String command = scanner.nextLine().trim().toUpperCase();
 
@@ -31,7 +38,7 @@ public class DatabaseManager {
                         handleSetup(connection);
                         break;
                     case "INSERT":
-                        handleInsert(scanner, connection);
+                        handleInsert(scanner, connection, statementCache);
                         break;
                     case "READ":
                         handleRead(scanner, connection);
@@ -42,6 +49,15 @@ public class DatabaseManager {
                     case "DELETE":
                         handleDelete(scanner, connection);
                         break;
+                    case "EXPORT":
+                        handleExport(scanner, connection);
+                        break;
+                    case "IMPORT":
+                        handleImport(scanner, queryStats);
+                        break;
+                    case "STATS":
+                        System.out.println(queryStats.report());
+                        break;
                     case "EXIT":
                         System.out.println("Returning to Main Menu...");
                         keepRunning = false; // This will exit the loop and the method.
@@ -56,6 +72,8 @@ public class DatabaseManager {
         } catch (Exception e) {
             System.err.println("An application error occurred: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            MetricsRegistry.DEFAULT.unregister(queryStats); // the GUI's statistics are reported again
         }
         // DO NOT close the scanner here.
     }
@@ -68,31 +86,23 @@ public class DatabaseManager {
         try (BufferedReader reader = new BufferedReader(new FileReader(SETUP_FILE))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                String trimmedLine = line.trim();
-                if (trimmedLine.contains("--")) {
-                    trimmedLine = trimmedLine.substring(0, trimmedLine.indexOf("--")).trim();
-                }
-                if (!trimmedLine.isEmpty()) {
-                    sqlBuilder.append(trimmedLine).append(" ");
-                }
+                sqlBuilder.append(line).append('\n');
             }
         } catch (IOException e) {
             System.err.println("Error: Could not read file '" + SETUP_FILE + "'. " + e.getMessage());
             return;
         }
 
-        String[] queries = sqlBuilder.toString().split(";");
+        // Same splitting as the GUI's scripts, so semicolons and -- inside quotes and comments are left alone.
+        List<String> queries = DatabaseHelper.splitStatements(sqlBuilder.toString(), CONFIG.dialect);
         List<String> createdTables = new ArrayList<>();
 
         // Use try-with-resources for the Statement
         try (Statement stmt = connection.createStatement()) {
             for (String query : queries) {
-                String trimmedQuery = query.trim();
-                if (!trimmedQuery.isEmpty()) {
-                    stmt.executeUpdate(trimmedQuery);
-                    if (trimmedQuery.toUpperCase().startsWith("CREATE TABLE")) {
-                        createdTables.add(extractTableName(trimmedQuery));
-                    }
+                stmt.executeUpdate(query);
+                if (query.toUpperCase().startsWith("CREATE TABLE")) {
+                    createdTables.add(extractTableName(query));
                 }
             }
             System.out.println("\n✅ Database setup complete.");
@@ -104,7 +114,7 @@ public class DatabaseManager {
         }
     }
 
-    private static void handleInsert(Scanner scanner, Connection connection) {
+    private static void handleInsert(Scanner scanner, Connection connection, StatementCache statementCache) {
         System.out.println("Which table do you want to insert into? (e.g., DEPT, EMP)");
         String tableName = scanner.nextLine().trim().toUpperCase();
         String primaryKeyCol = getPrimaryKeyColumn(tableName);
@@ -124,7 +134,7 @@ public class DatabaseManager {
                 if (sql.toUpperCase().startsWith("INSERT INTO " + tableName)) {
                     // This logic prevents inserting duplicate primary keys if the file is run multiple times
                     String pkValue = extractPrimaryKeyValue(sql, tableName);
-                    if (primaryKeyCol == null || pkValue == null || !recordExists(connection, tableName, primaryKeyCol, pkValue)) {
+                    if (primaryKeyCol == null || pkValue == null || !recordExists(statementCache, tableName, primaryKeyCol, pkValue)) {
                         rowsAffected += stmt.executeUpdate(sql);
                     }
                 }
@@ -142,6 +152,7 @@ public class DatabaseManager {
         } else {
             System.out.println("No new records were inserted. They may already exist.");
         }
+        System.out.println("Statement cache: " + StatementCache.formatHitRate(statementCache.getHits(), statementCache.getMisses()));
     }
 
     private static void handleRead(Scanner scanner, Connection connection) {
@@ -150,9 +161,14 @@ public class DatabaseManager {
         String sql = "SELECT * FROM " + tableName;
 
         // Use nested try-with-resources for Statement and ResultSet
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            printTable(rs);
+        try (Statement stmt = connection.createStatement(); ConsoleInterrupt interrupt = new ConsoleInterrupt()) {
+            stmt.setQueryTimeout(DatabaseHelper.QUERY_TIMEOUT_SECONDS);
+            stmt.setMaxRows(MAX_PRINTED_ROWS + 1); // the extra row only tells printTable there are more
+            interrupt.watch(stmt);
+            System.out.println("(Ctrl+C cancels)");
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                printTable(rs, MAX_PRINTED_ROWS);
+            }
         } catch (SQLException e) {
             System.err.println("Error reading data from table " + tableName + ": " + e.getMessage());
         }
@@ -178,7 +194,9 @@ public class DatabaseManager {
         String sql = String.format("UPDATE %s SET %s = ? WHERE %s = ?", tableName, columnToUpdate, primaryKeyCol);
 
         // Use try-with-resources for PreparedStatement
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = connection.prepareStatement(sql); ConsoleInterrupt interrupt = new ConsoleInterrupt()) {
+            pstmt.setQueryTimeout(DatabaseHelper.WRITE_TIMEOUT_SECONDS);
+            interrupt.watch(pstmt);
             pstmt.setString(1, newValue);
             pstmt.setString(2, pkValue);
             int rowsAffected = pstmt.executeUpdate();
@@ -212,7 +230,9 @@ public class DatabaseManager {
         
         String sql = String.format("DELETE FROM %s WHERE %s = ?", tableName, primaryKeyCol);
         
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = connection.prepareStatement(sql); ConsoleInterrupt interrupt = new ConsoleInterrupt()) {
+            pstmt.setQueryTimeout(DatabaseHelper.WRITE_TIMEOUT_SECONDS);
+            interrupt.watch(pstmt);
             pstmt.setString(1, pkValue);
             int rowsAffected = pstmt.executeUpdate();
             System.out.println(rowsAffected > 0 ? "✅ Record deleted successfully." : "Record not found.");
@@ -221,14 +241,62 @@ public class DatabaseManager {
         }
     }
     
-    private static void printTable(ResultSet rs) throws SQLException {
+    private static void handleImport(Scanner scanner, QueryStats queryStats) {
+        System.out.println("Enter table name to import into:");
+        String tableName = scanner.nextLine().trim();
+        System.out.println("Enter CSV file (first line must name the columns):");
+        String fileName = scanner.nextLine().trim();
+
+        // The writers need their own connections, so the import gets a short-lived pool.
+        try (ConnectionPool pool = new ConnectionPool(CONFIG.url, CONFIG.user, CONFIG.password, IMPORT_WRITERS + 1, 4, queryStats)) {
+            CsvImporter.Result result = new CsvImporter(pool, 1000, 10_000, IMPORT_WRITERS).importCsv(tableName, Paths.get(fileName),
+                    (done, total) -> System.out.println("  " + done + " row(s) committed..."));
+            System.out.println("✅ Imported " + result.imported + " row(s) into " + tableName + ".");
+            if (result.rejected > 0) {
+                System.out.println(result.rejected + " row(s) rejected; see " + result.errorFile);
+            }
+        } catch (SQLException e) {
+            System.err.println("Import failed: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Could not read '" + fileName + "': " + e.getMessage());
+        }
+    }
+
+    private static void handleExport(Scanner scanner, Connection connection) {
+        System.out.println("Enter table name to export:");
+        String tableName = scanner.nextLine().trim();
+        System.out.println("Enter output file (end with .gz to compress), or press Enter for " + tableName + ".csv:");
+        String fileName = scanner.nextLine().trim();
+        if (fileName.isEmpty()) {
+            fileName = tableName + ".csv";
+        }
+
+        // Rows are streamed straight from the result set to the file, so table size does not matter.
+        try (ConsoleInterrupt interrupt = new ConsoleInterrupt()) {
+            System.out.println("(Ctrl+C cancels)");
+            long rows = TableExporter.exportQuery(connection, "SELECT * FROM " + tableName, Paths.get(fileName), fileName.endsWith(".gz"),
+                    interrupt::watch);
+            System.out.println("✅ Exported " + rows + " row(s) from " + tableName + " to " + fileName + ".");
+        } catch (SQLException e) {
+            System.err.println("Export failed: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Could not write '" + fileName + "': " + e.getMessage());
+        }
+    }
+
+    private static void printTable(ResultSet rs, int maxRows) throws SQLException {
         // This method is complex but correct. We'll just clean up the variables.
         ResultSetMetaData metaData = rs.getMetaData();
         int columnCount = metaData.getColumnCount();
         List<List<String>> allRows = new ArrayList<>();
+        boolean truncated = false;
 
-        // Read all rows into memory
+        // Read up to maxRows rows into memory
         while (rs.next()) {
+            if (allRows.size() == maxRows) {
+                truncated = true;
+                break;
+            }
             List<String> row = new ArrayList<>();
             for (int i = 1; i <= columnCount; i++) {
                 String value = rs.getString(i);
@@ -275,6 +343,9 @@ public class DatabaseManager {
             }
             System.out.println();
         }
+        if (truncated) {
+            System.out.println("(Showing the first " + maxRows + " rows; use EXPORT for the whole table)");
+        }
     }
     
     // The rest of the helper methods are mostly fine, just renamed vars for clarity
@@ -323,13 +394,13 @@ public class DatabaseManager {
         }
     }
     
-    private static boolean recordExists(Connection connection, String tableName, String pkColumn, String pkValue) throws SQLException {
+    private static boolean recordExists(StatementCache statementCache, String tableName, String pkColumn, String pkValue) throws SQLException {
         String sql = String.format("SELECT 1 FROM %s WHERE %s = ?", tableName, pkColumn);
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, pkValue);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                return rs.next();
-            }
+        // The same lookup runs once per line of the insert file, so reuse the prepared statement.
+        PreparedStatement pstmt = statementCache.prepare(sql);
+        pstmt.setString(1, pkValue);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next();
         }
     }
     
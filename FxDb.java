@@ -1,11 +1,17 @@
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.CheckBoxTableCell;
@@ -16,6 +22,8 @@ import javafx.scene.layout.*;
 import javafx.stage.FileChooser;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
+import javafx.util.Callback;
+import javafx.util.Duration;
 
 import java.io.File;
 import java.io.IOException;
@@ -23,30 +31,70 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class FxDb extends Application {
+    private static final Duration EDIT_FLUSH_DELAY = Duration.seconds(2);
+    private static final int PAGE_SIZE = 500;
+    // Lists this short have every table's first page prefetched as soon as they load.
+    private static final int PREFETCH_ALL_MAX_TABLES = 12;
+    private static final int LIVE_REFRESH_SECONDS = Integer.getInteger("fxdb.liveRefreshSeconds", 5);
+    private static final int LOG_MAX_LINES = 5000;
+
     private Stage primaryStage;
     private ListView<String> tableListView;
     private TableView<ObservableList<String>> dataTableView;
-    private TextArea logArea;
+    private LogConsole logConsole;
     private Label currentTableLabel;
     private VBox insertForm;
     private TabPane actionTabPane;
+    private TabPane centerTabPane; // "Data" plus one closable tab per result of the last script
+    private final List<DatabaseHelper.ScriptResult> scriptResults = new ArrayList<>();
     private TextField updateSetField, updateWhereField;
     private TextField deleteWhereField;
     private TextArea customSqlArea;
+    private Button executeSqlButton, executeFromFileButton, cancelSqlButton; // Cancel is enabled while a script runs
+    private Thread scriptWorker; // runs this window's scripts, so Cancel only stops those
+    private CheckBox explainAnalyzeCheckBox;
+    private Tab planTab;
+    private TextArea statsArea;
+    private TextField slowQueryThresholdField;
     private TableView<ColumnDefinition> createTableDefView;
     private TextField newTableNameField;
     private ComboBox<String> dropColumnComboBox;
     private Button dropColumnButton;
-    private final Map<ObservableList<String>, SimpleBooleanProperty> rowSelectionMap = new HashMap<>();
-    private final DatabaseHelper dbHelper = new DatabaseHelper();
+    private final RowSelectionModel rowSelection = new RowSelectionModel();
+    private DatabaseHelper.TableQuery matchingQuery; // what "Check All Matching" covers, while in that mode
+    private long matchingCount;
+    private final DatabaseHelper dbHelper = GuiHost.database(); // shared by every window
+    private DatabaseHelper.TableData currentQueryResult; // custom query result currently shown (may be off-heap)
+    private String currentQuerySql;
+    private String displayedTable; // table whose rows are in the grid, null for custom query results
+    private String displayedPkColumn;
+    private String actionPanelTable; // table the insert form and structure tab are for, once one is selected
+    private Set<String> displayedIndexedColumns = Collections.emptySet();
+    private DatabaseHelper.TableQuery currentPageQuery; // page, filters and sort currently shown
+    private long pageRequest; // bumped per page load so a late answer for an older request is dropped
+    private HBox filterBar;
+    private final Map<String, TextField> filterFields = new LinkedHashMap<>();
+    private Label pageLabel;
+    private CheckBox liveRefreshBox;
+    private Timeline liveRefresh;
+    private DatabaseHelper.PageVersions liveVersions; // last poll of the page on screen; null until the first
+    private boolean liveProbeRunning;
+    private Button prevPageButton, nextPageButton;
+    private Callback<TableView<ObservableList<String>>, Boolean> clientSortPolicy; // used for custom query results
+    private final CellEditBuffer editBuffer = new CellEditBuffer(EDIT_FLUSH_DELAY, this::flushPendingEdits);
 
     @Override
     public void start(Stage stage) {
         this.primaryStage = stage;
-        primaryStage.setTitle("JavaFX Dynamic DB Manager");
+        int windowNumber = GuiHost.windowOpened();
+        primaryStage.setTitle("JavaFX Dynamic DB Manager" + (windowNumber > 1 ? " [" + windowNumber + "]" : ""));
+        primaryStage.setOnHidden(e -> closeWindow());
 
         BorderPane root = new BorderPane();
         root.setPadding(new Insets(10));
@@ -55,11 +103,10 @@ public class FxDb extends Application {
         root.setCenter(createCenterPanel());
         root.setRight(createRightPanel());
 
-        logArea = new TextArea();
-        logArea.setEditable(false);
-        logArea.setPrefHeight(120);
-        logArea.setText("Welcome! Connect to the database and select a table to begin.\n");
-        root.setBottom(logArea);
+        logConsole = new LogConsole(LOG_MAX_LINES);
+        logConsole.getView().setPrefHeight(120);
+        logConsole.append("Welcome! Connect to the database and select a table to begin.");
+        root.setBottom(logConsole.getView());
 
         // --- DYNAMIC WINDOW SIZING LOGIC ---
         // Get the primary screen's visual bounds (the usable area excluding the taskbar)
@@ -75,107 +122,509 @@ public class FxDb extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
 
-        refreshTableList();
+        // The first connection (driver load, TCP, auth) happens off the UI thread so the window paints at once.
+        dbHelper.getTableNamesAsync().whenCompleteAsync((tableNames, error) -> {
+            if (error != null) {
+                showError("Database Error", "Could not fetch table list.", error.getMessage());
+                log("Error fetching table list: " + error.getMessage());
+            } else {
+                showTableNames(tableNames);
+                log("Successfully fetched table list from the database.");
+            }
+        }, Platform::runLater);
+        if (Boolean.getBoolean("fxdb.exitAfterFirstWindow")) {
+            // Used by StartupBenchmark and the CDS training run.
+            Platform.runLater(() -> {
+                System.out.println("First window shown");
+                primaryStage.close();
+            });
+        }
+    }
+
+    @Override
+    public void stop() {
+        GuiHost.shutdown(); // only reached when FxDb is launched on its own; windows clean up in closeWindow
+    }
+
+    // Releases what this window holds; the shared pool and caches stay open for the other windows.
+    private void closeWindow() {
+        liveRefresh.stop();
+        flushPendingEdits();
+        logConsole.stop();
+        if (scriptWorker != null) dbHelper.cancelRunningQueries(scriptWorker);
+        releaseQueryResult();
+        scriptResults.forEach(DatabaseHelper.ScriptResult::close);
+        scriptResults.clear();
+        GuiHost.windowClosed();
     }
 
     private TabPane createRightPanel() {
         actionTabPane = new TabPane();
         actionTabPane.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+        // Only the tab on show is built now; the others are built the first time they are selected.
         Tab createTab = new Tab("Create Table", createCreateTableTab());
-        Tab insertTab = new Tab("Insert", createInsertTab());
-        Tab updateTab = new Tab("Update", createUpdateTab());
-        Tab deleteTab = new Tab("Delete", createDeleteTab());
-        Tab structureTab = new Tab("Structure", createStructureTab());
-        Tab sqlTab = new Tab("Execute SQL", createSqlTab());
-        actionTabPane.getTabs().addAll(createTab, insertTab, updateTab, deleteTab, structureTab, sqlTab);
+        Tab insertTab = lazyTab("Insert", this::createInsertTab);
+        Tab updateTab = lazyTab("Update", this::createUpdateTab);
+        Tab deleteTab = lazyTab("Delete", this::createDeleteTab);
+        Tab structureTab = lazyTab("Structure", this::createStructureTab);
+        Tab sqlTab = lazyTab("Execute SQL", this::createSqlTab);
+        Tab statsTab = lazyTab("Stats", this::createStatsTab);
+        statsTab.selectedProperty().addListener((obs, wasSelected, isSelected) -> {
+            if (isSelected) refreshStats(); // runs after lazyTab has built the content
+        });
+        actionTabPane.getTabs().addAll(createTab, insertTab, updateTab, deleteTab, structureTab, sqlTab, statsTab);
         actionTabPane.setPrefWidth(500);
         return actionTabPane;
     }
 
-    private VBox createCenterPanel() {
+    private static Tab lazyTab(String title, Supplier<Node> content) {
+        Tab tab = new Tab(title);
+        tab.setOnSelectionChanged(e -> {
+            if (tab.isSelected() && tab.getContent() == null) tab.setContent(content.get());
+        });
+        return tab;
+    }
+
+    private TabPane createCenterPanel() {
         currentTableLabel = new Label("No Table Selected");
         currentTableLabel.setStyle("-fx-font-size: 18px; -fx-font-weight: bold;");
         Button deleteSelectedButton = new Button("Delete Selected Rows");
         deleteSelectedButton.setOnAction(e -> handleDeleteSelectedRows());
         deleteSelectedButton.setStyle("-fx-background-color: #ff8c8c; -fx-text-fill: white; -fx-font-weight: bold;");
-        HBox topBar = new HBox(20, currentTableLabel, deleteSelectedButton);
+        Button commitEditsButton = new Button("Commit Edits");
+        commitEditsButton.setOnAction(e -> flushPendingEdits());
+        Button exportButton = new Button("Export CSV...");
+        exportButton.setOnAction(e -> handleExport());
+        Button selectAllButton = new Button("Check All");
+        selectAllButton.setOnAction(e -> {
+            rowSelection.selectAll();
+            dataTableView.refresh();
+        });
+        Button selectAllMatchingButton = new Button("Check All Matching");
+        selectAllMatchingButton.setOnAction(e -> handleCheckAllMatching());
+        Button checkHighlightedButton = new Button("Check Highlighted");
+        checkHighlightedButton.setOnAction(e -> handleCheckHighlightedRows());
+        Button clearSelectionButton = new Button("Uncheck All");
+        clearSelectionButton.setOnAction(e -> {
+            rowSelection.clear();
+            dataTableView.refresh();
+        });
+        Button newWindowButton = new Button("New Window");
+        newWindowButton.setOnAction(e -> GuiHost.openWindow());
+        HBox topBar = new HBox(20, currentTableLabel, deleteSelectedButton, commitEditsButton, exportButton, newWindowButton,
+                new HBox(5, selectAllButton, selectAllMatchingButton, checkHighlightedButton, clearSelectionButton));
         topBar.setAlignment(Pos.CENTER_LEFT);
         dataTableView = new TableView<>();
         dataTableView.setEditable(true);
         dataTableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        clientSortPolicy = dataTableView.getSortPolicy();
         dataTableView.setPlaceholder(new Label("Select a table from the list on the left to view its data."));
-        VBox centerPanel = new VBox(10, topBar, dataTableView);
+        filterBar = new HBox(5);
+        filterBar.setAlignment(Pos.CENTER_LEFT);
+        prevPageButton = new Button("< Prev");
+        prevPageButton.setDisable(true);
+        prevPageButton.setOnAction(e -> loadPage(currentPageQuery.withOffset(currentPageQuery.offset - PAGE_SIZE)));
+        nextPageButton = new Button("Next >");
+        nextPageButton.setDisable(true);
+        nextPageButton.setOnAction(e -> loadPage(currentPageQuery.withOffset(currentPageQuery.offset + PAGE_SIZE)));
+        pageLabel = new Label();
+        liveRefreshBox = new CheckBox("Live (every " + LIVE_REFRESH_SECONDS + "s)");
+        liveRefreshBox.setTooltip(new Tooltip("Poll the page for changes made elsewhere and update changed rows in place."));
+        liveRefresh = new Timeline(new KeyFrame(Duration.seconds(LIVE_REFRESH_SECONDS), e -> pollLivePage()));
+        liveRefresh.setCycleCount(Animation.INDEFINITE);
+        liveRefreshBox.selectedProperty().addListener((obs, wasLive, live) -> setLiveRefresh(live));
+        HBox pagerBar = new HBox(10, prevPageButton, pageLabel, nextPageButton, liveRefreshBox);
+        pagerBar.setAlignment(Pos.CENTER_LEFT);
+        VBox centerPanel = new VBox(10, topBar, filterBar, dataTableView, pagerBar);
         centerPanel.setPadding(new Insets(10));
         VBox.setVgrow(dataTableView, Priority.ALWAYS);
-        return centerPanel;
+        Tab dataTab = new Tab("Data", centerPanel);
+        dataTab.setClosable(false);
+        centerTabPane = new TabPane(dataTab);
+        return centerTabPane;
     }
 
-    @SuppressWarnings("unchecked")
+    private static DatabaseHelper.TableQuery firstPageQuery(String tableName) {
+        return new DatabaseHelper.TableQuery(tableName, Collections.emptyMap(), null, true, 0, PAGE_SIZE);
+    }
+
+    private void prefetchTable(String tableName) {
+        if (!tableName.equals(displayedTable)) {
+            dbHelper.prefetchTable(firstPageQuery(tableName));
+        }
+    }
+
+    // Only the first page is fetched, off the UI thread like every other page; sorting, filtering and paging
+    // go back to the database. The grid stays empty until the page arrives.
     private void loadTableData(String tableName) {
-        try {
-            dataTableView.getColumns().clear();
-            dataTableView.getItems().clear();
-            rowSelectionMap.clear();
-            DatabaseHelper.TableData tableData = dbHelper.getTableData(tableName);
-            TableColumn<ObservableList<String>, Boolean> selectCol = new TableColumn<>("Select");
-            selectCol.setCellValueFactory(cellData -> rowSelectionMap.computeIfAbsent(cellData.getValue(), k -> new SimpleBooleanProperty(false)));
-            selectCol.setCellFactory(CheckBoxTableCell.forTableColumn(selectCol));
-            selectCol.setEditable(true);
-            selectCol.setPrefWidth(50);
-            dataTableView.getColumns().add(selectCol);
-            for (int i = 0; i < tableData.headers.size(); i++) {
-                final int colIndex = i;
-                TableColumn<ObservableList<String>, String> column = new TableColumn<>(tableData.headers.get(i));
-                column.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().get(colIndex)));
-                column.setCellFactory(TextFieldTableCell.forTableColumn());
-                column.setOnEditCommit(event -> {
+        flushPendingEdits();
+        dataTableView.getColumns().clear();
+        dataTableView.setItems(FXCollections.observableArrayList());
+        releaseQueryResult();
+        displayedTable = null;
+        displayedIndexedColumns = Collections.emptySet();
+        rowSelection.detach();
+        long request = ++pageRequest;
+        centerTabPane.getSelectionModel().select(0);
+        pageLabel.setText("Loading...");
+        DatabaseHelper.TableQuery query = firstPageQuery(tableName);
+        CompletableFuture<Set<String>> indexedColumns = dbHelper.getIndexedColumnsAsync(tableName);
+        dbHelper.getTablePageAsync(query).whenCompleteAsync((tableData, error) -> {
+            if (request != pageRequest) return; // another table, page or query by now
+            if (error != null) {
+                updatePageControls(dataTableView.getItems(), 0, false);
+                showError("Data Load Error", "Could not load data for table '" + tableName + "'.", error.getMessage());
+                log("Error loading data for '" + tableName + "': " + error.getMessage());
+                return;
+            }
+            currentPageQuery = query;
+            showTable(tableName, tableData);
+            indexedColumns.whenCompleteAsync((columns, indexError) -> {
+                if (indexError != null) {
+                    log("Could not read the indexes of '" + tableName + "': " + indexError.getMessage());
+                } else if (tableName.equals(displayedTable)) {
+                    displayedIndexedColumns = columns;
+                }
+            }, Platform::runLater);
+        }, Platform::runLater);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void showTable(String tableName, DatabaseHelper.TableData tableData) {
+        TableColumn<ObservableList<String>, Boolean> selectCol = new TableColumn<>("Select");
+        // Check boxes read and write the selection bitset by row index; a property only
+        // exists while a cell is on screen.
+        selectCol.setCellFactory(CheckBoxTableCell.forTableColumn(index -> {
+            SimpleBooleanProperty checked = new SimpleBooleanProperty(rowSelection.isSelected(index));
+            checked.addListener((obs, wasChecked, isChecked) -> rowSelection.setSelected(index, isChecked));
+            return checked;
+        }));
+        selectCol.setEditable(true);
+        selectCol.setPrefWidth(50);
+        dataTableView.getColumns().add(selectCol);
+        for (int i = 0; i < tableData.headers.size(); i++) {
+            final int colIndex = i;
+            TableColumn<ObservableList<String>, String> column = new TableColumn<>(tableData.headers.get(i));
+            column.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().get(colIndex)));
+            column.setCellFactory(TextFieldTableCell.forTableColumn());
+            column.setOnEditCommit(event -> {
+                ObservableList<String> row = event.getRowValue();
+                String primaryKeyColumn = tableData.headers.get(0);
+                if (colIndex == 0) {
+                    // A key change would invalidate the keys of queued edits, so write it straight through.
+                    flushPendingEdits();
                     try {
-                        ObservableList<String> row = event.getRowValue();
+                        dbHelper.updateCellValue(tableName, primaryKeyColumn, event.getNewValue(), primaryKeyColumn, event.getOldValue());
                         row.set(colIndex, event.getNewValue());
-                        String primaryKeyColumn = tableData.headers.get(0);
-                        String primaryKeyValue = row.get(0);
-                        dbHelper.updateCellValue(tableName, tableData.headers.get(colIndex), event.getNewValue(), primaryKeyColumn, primaryKeyValue);
-                        log("Updated cell in '" + tableName + "'.");
+                        log("Updated key in '" + tableName + "'. " + dbHelper.getStatementCacheStats());
                     } catch (SQLException e) {
                         showError("Update Error", "Could not update the cell in the database.", e.getMessage());
-                        loadTableData(tableName);
+                        refreshRows(tableName, primaryKeyColumn, Collections.singleton(event.getOldValue()));
                     }
-                });
-                column.setPrefWidth(120);
-                dataTableView.getColumns().add(column);
+                    return;
+                }
+                row.set(colIndex, event.getNewValue());
+                editBuffer.record(tableName, primaryKeyColumn, row.get(0), tableData.headers.get(colIndex), event.getNewValue());
+                log("Queued edit in '" + tableName + "' (" + editBuffer.size() + " pending).");
+            });
+            column.setPrefWidth(120);
+            dataTableView.getColumns().add(column);
+        }
+        selectCol.setSortable(false);
+        dataTableView.setSortPolicy(this::applyServerSort);
+        buildFilterBar(tableData.headers);
+        // Set before showPage, whose live-refresh poll needs them to take the first page's baseline.
+        displayedTable = tableName;
+        displayedPkColumn = tableData.headers.isEmpty() ? null : tableData.headers.get(0);
+        showPage(tableData);
+        log("Displayed data for table '" + tableName + "'. Showing " + tableData.rows.size() + " rows"
+                + (tableData.hasMoreRows ? " (more pages available). " : ". ") + dbHelper.getResultCacheStats());
+    }
+
+    // The page is fetched off the UI thread; the grid keeps showing the old page until it arrives.
+    private void loadPage(DatabaseHelper.TableQuery query) {
+        flushPendingEdits();
+        long request = ++pageRequest;
+        pageLabel.setText("Loading...");
+        dbHelper.getTablePageAsync(query).whenCompleteAsync((page, error) -> {
+            if (request != pageRequest) return; // superseded by a newer page, sort, filter or table
+            if (error != null) {
+                updatePageControls(dataTableView.getItems(), currentPageQuery.offset, !nextPageButton.isDisabled());
+                showError("Data Load Error", "Could not load the requested rows of '" + query.tableName + "'.", error.getMessage());
+                log("Error loading rows of '" + query.tableName + "': " + error.getMessage());
+                return;
+            }
+            currentPageQuery = query;
+            showPage(page);
+        }, Platform::runLater);
+    }
+
+    private void showPage(DatabaseHelper.TableData page) {
+        dataTableView.setItems(page.rows);
+        // Check boxes apply to the page on screen; "all matching" survives paging and sorting, not a new filter.
+        boolean keepAllMatching = rowSelection.isAllMatching() && matchingQuery != null
+                && matchingQuery.tableName.equals(currentPageQuery.tableName) && matchingQuery.filters.equals(currentPageQuery.filters);
+        rowSelection.attach(page.rows);
+        if (keepAllMatching) {
+            rowSelection.selectAllMatching();
+        } else {
+            matchingQuery = null;
+        }
+        updatePageControls(page.rows, currentPageQuery.offset, page.hasMoreRows);
+        liveVersions = null;
+        if (liveRefreshBox.isSelected()) pollLivePage(); // baseline for the new page
+    }
+
+    private void setLiveRefresh(boolean live) {
+        liveVersions = null;
+        if (!live) {
+            liveRefresh.stop();
+            return;
+        }
+        liveRefresh.play();
+        pollLivePage();
+        log("Live refresh on: polling every " + LIVE_REFRESH_SECONDS + "s.");
+    }
+
+    // Each poll fetches only the key and version of the rows on the page; changed rows are then re-read by key
+    // and replaced in place. Inserts, deletes or reordering within the page window reload the page.
+    private void pollLivePage() {
+        if (liveProbeRunning || displayedTable == null || displayedPkColumn == null) return;
+        if (!editBuffer.isEmpty() || dataTableView.getEditingCell() != null) return; // never overwrite an edit in progress
+        DatabaseHelper.TableQuery query = currentPageQuery;
+        String tableName = displayedTable;
+        String pkColumn = displayedPkColumn;
+        long request = pageRequest;
+        liveProbeRunning = true;
+        dbHelper.getPageVersionsAsync(query, pkColumn).whenCompleteAsync((versions, error) -> {
+            liveProbeRunning = false;
+            if (request != pageRequest || !liveRefreshBox.isSelected()) return;
+            if (error != null) {
+                log("Live refresh of '" + tableName + "' failed: " + error.getMessage());
+                return;
+            }
+            DatabaseHelper.PageVersions previous = liveVersions;
+            liveVersions = versions;
+            if (previous == null) return;
+            if (!versions.sameRows(previous)) {
+                dbHelper.invalidateResultCache(tableName);
+                log("Live refresh: rows were added or removed in '" + tableName + "', reloading the page.");
+                loadPage(query);
+                return;
+            }
+            Set<String> changed = versions.changedSince(previous);
+            if (changed.isEmpty()) return;
+            dbHelper.invalidateResultCache(tableName);
+            dbHelper.getRowsByKeysAsync(query, pkColumn, changed).whenCompleteAsync((rows, rowsError) -> {
+                if (request != pageRequest) return;
+                if (rowsError != null) {
+                    log("Live refresh of '" + tableName + "' failed: " + rowsError.getMessage());
+                    liveVersions = null;
+                    return;
+                }
+                Map<String, ObservableList<String>> freshRows = new LinkedHashMap<>();
+                for (ObservableList<String> row : rows.rows) {
+                    freshRows.put(row.get(0), row);
+                }
+                applyRowChanges(changed, freshRows);
+                log("Live refresh: " + changed.size() + " row(s) changed in '" + tableName + "'.");
+            }, Platform::runLater);
+        }, Platform::runLater);
+    }
+
+    private void updatePageControls(List<ObservableList<String>> rows, int offset, boolean hasMoreRows) {
+        pageLabel.setText(rows.isEmpty() ? "No rows" : "Rows " + (offset + 1) + " - " + (offset + rows.size()));
+        prevPageButton.setDisable(offset == 0);
+        nextPageButton.setDisable(!hasMoreRows);
+    }
+
+    // Header clicks re-query the database with ORDER BY instead of sorting the loaded page.
+    private boolean applyServerSort(TableView<ObservableList<String>> table) {
+        if (currentPageQuery == null) return true;
+        String sortColumn = null;
+        boolean ascending = true;
+        if (!table.getSortOrder().isEmpty()) {
+            TableColumn<ObservableList<String>, ?> column = table.getSortOrder().get(0);
+            sortColumn = column.getText();
+            ascending = column.getSortType() == TableColumn.SortType.ASCENDING;
+        }
+        if (!Objects.equals(sortColumn, currentPageQuery.sortColumn) || ascending != currentPageQuery.ascending) {
+            warnIfUnindexed(sortColumn == null ? Collections.emptySet() : Collections.singleton(sortColumn), "Sorting");
+            DatabaseHelper.TableQuery sorted = currentPageQuery.withSort(sortColumn, ascending);
+            Platform.runLater(() -> loadPage(sorted)); // not from inside TableView.sort()
+        }
+        return true;
+    }
+
+    private void buildFilterBar(List<String> headers) {
+        filterBar.getChildren().clear();
+        filterFields.clear();
+        for (String header : headers) {
+            TextField field = new TextField();
+            field.setPromptText(header + " starts with...");
+            field.setPrefWidth(120);
+            field.setOnAction(e -> applyFilters());
+            filterFields.put(header, field);
+            filterBar.getChildren().add(field);
+        }
+        Button applyButton = new Button("Filter");
+        applyButton.setOnAction(e -> applyFilters());
+        Button clearButton = new Button("Clear");
+        clearButton.setOnAction(e -> {
+            filterFields.values().forEach(TextField::clear);
+            applyFilters();
+        });
+        filterBar.getChildren().addAll(applyButton, clearButton);
+    }
+
+    private void applyFilters() {
+        if (currentPageQuery == null) return;
+        Map<String, String> filters = new LinkedHashMap<>();
+        filterFields.forEach((column, field) -> {
+            String value = field.getText().trim();
+            if (!value.isEmpty()) filters.put(column, value);
+        });
+        warnIfUnindexed(filters.keySet(), "Filtering");
+        loadPage(currentPageQuery.withFilters(filters));
+    }
+
+    private void warnIfUnindexed(Collection<String> columns, String operation) {
+        for (String column : columns) {
+            if (!displayedIndexedColumns.contains(column.toUpperCase())) {
+                log(operation + " on '" + column + "' cannot use an index and will scan the table.");
             }
-            dataTableView.setItems(tableData.rows);
-            log("Displayed data for table '" + tableName + "'. Found " + tableData.rows.size() + " rows.");
+        }
+    }
+
+    private void flushPendingEdits() {
+        if (editBuffer.isEmpty()) return;
+        String tableName = editBuffer.getTableName();
+        String pkColumn = editBuffer.getPkColumn();
+        List<DatabaseHelper.CellEdit> edits = editBuffer.drain();
+        try {
+            dbHelper.updateCells(tableName, pkColumn, edits);
+            log("Committed " + edits.size() + " cell edit(s) to '" + tableName + "'. " + dbHelper.getStatementCacheStats());
         } catch (SQLException e) {
-            showError("Data Load Error", "Could not load data for table '" + tableName + "'.", e.getMessage());
-            log("Error loading data for '" + tableName + "': " + e.getMessage());
+            showError("Update Error", "Could not save the pending cell edits. They were rolled back.", e.getMessage());
+            log("Error committing cell edits to '" + tableName + "': " + e.getMessage());
+            Set<String> affectedKeys = edits.stream().map(edit -> edit.pkValue).collect(Collectors.toCollection(LinkedHashSet::new));
+            refreshRows(tableName, pkColumn, affectedKeys);
         }
     }
 
-    private void handleDeleteSelectedRows() {
+    // Re-reads only the given rows and patches them into the grid instead of reloading the whole table.
+    // A key that now matches the page but was not on it (a new match) reloads the page instead.
+    private void refreshRows(String tableName, String pkColumn, Collection<String> pkValues) {
+        if (!tableName.equals(displayedTable) || pkValues.isEmpty()) return;
+        try {
+            Map<String, ObservableList<String>> freshRows = new LinkedHashMap<>();
+            for (ObservableList<String> row : dbHelper.getRowsByKeys(currentPageQuery, pkColumn, pkValues).rows) {
+                freshRows.put(row.get(0), row);
+            }
+            if (!applyRowChanges(pkValues, freshRows)) {
+                loadPage(currentPageQuery);
+                return;
+            }
+            log("Refreshed " + pkValues.size() + " row(s) of '" + tableName + "'.");
+        } catch (SQLException e) {
+            log("Error refreshing rows of '" + tableName + "': " + e.getMessage());
+            loadTableData(tableName);
+        }
+    }
+
+    // Rows on the page with the given keys are replaced by their fresh version, or removed when there is none
+    // (deleted, or filtered out by now). Fresh rows that are not on the page are left out, since where they
+    // belong depends on the sort and offset; false tells the caller to reload the page for them.
+    // The item list itself is kept, so scrolling is not reset.
+    private boolean applyRowChanges(Collection<String> pkValues, Map<String, ObservableList<String>> freshRows) {
+        Set<String> keys = new HashSet<>(pkValues);
+        ObservableList<ObservableList<String>> items = dataTableView.getItems();
+        TableView.TableViewSelectionModel<ObservableList<String>> selection = dataTableView.getSelectionModel();
+        Set<String> selectedKeys = selection.getSelectedItems().stream().map(row -> row.get(0)).collect(Collectors.toSet());
+        Set<ObservableList<String>> deletedRows = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<String, ObservableList<String>> newRows = new LinkedHashMap<>(freshRows);
+        for (int i = 0; i < items.size(); i++) {
+            ObservableList<String> row = items.get(i);
+            if (!keys.contains(row.get(0))) continue;
+            ObservableList<String> fresh = newRows.remove(row.get(0));
+            if (fresh != null) {
+                items.set(i, fresh); // same index, so the row stays checked in rowSelection
+            } else {
+                deletedRows.add(row);
+            }
+        }
+        if (!deletedRows.isEmpty()) {
+            items.removeAll(deletedRows);
+        }
+        if (!selectedKeys.isEmpty()) {
+            selection.clearSelection();
+            for (int i = 0; i < items.size(); i++) {
+                if (selectedKeys.contains(items.get(i).get(0))) selection.select(i);
+            }
+        }
+        return newRows.isEmpty();
+    }
+
+    // The grid holds rows of the selected table, not a query result or another table's page.
+    private boolean showsTableRows() {
         String tableName = getSelectedTable();
-        if (tableName == null) return;
-        List<ObservableList<String>> rowsToDelete = rowSelectionMap.entrySet().stream()
-                .filter(entry -> entry.getValue().get())
-                .map(Map.Entry::getKey)
+        if (tableName == null) return false;
+        if (!tableName.equals(displayedTable) || displayedPkColumn == null) {
+            showError("No Table Rows", "The grid is not showing rows of '" + tableName + "'.",
+                    "Select the table again to show its rows, then check the rows to act on.");
+            return false;
+        }
+        return true;
+    }
+
+    private void handleDeleteSelectedRows() {
+        if (!showsTableRows()) return;
+        String tableName = displayedTable;
+        String pkColumnName = displayedPkColumn;
+        flushPendingEdits();
+        if (rowSelection.isAllMatching() && matchingQuery != null) {
+            deleteAllMatching(matchingQuery, matchingCount);
+            return;
+        }
+        ObservableList<ObservableList<String>> items = dataTableView.getItems();
+        List<String> pkValues = rowSelection.selectedIndices()
+                .filter(i -> i < items.size())
+                .mapToObj(i -> items.get(i).get(0))
                 .collect(Collectors.toList());
-        if (rowsToDelete.isEmpty()) {
+        if (pkValues.isEmpty()) {
             showError("No Selection", "No rows selected.", "Please check the boxes next to the rows you wish to delete.");
             return;
         }
         try {
-            String pkColumnName = dbHelper.getColumnNames(tableName).get(0);
-            List<String> pkValues = rowsToDelete.stream()
-                    .map(row -> row.get(0))
-                    .collect(Collectors.toList());
+            String keyPreview = pkValues.size() <= 20 ? String.join(", ", pkValues)
+                    : String.join(", ", pkValues.subList(0, 20)) + ", ... and " + (pkValues.size() - 20) + " more";
             Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
             confirm.setTitle("Confirm Deletion");
             confirm.setHeaderText("Delete " + pkValues.size() + " row(s) from table '" + tableName + "'?");
-            confirm.setContentText("This action cannot be undone. The rows with " + pkColumnName + " in (" + String.join(", ", pkValues) + ") will be deleted.");
+            confirm.setContentText("This action cannot be undone. The rows with " + pkColumnName + " in (" + keyPreview + ") will be deleted.");
             if (confirm.showAndWait().orElse(ButtonType.CANCEL) == ButtonType.OK) {
-                dbHelper.deleteMultipleRows(tableName, pkColumnName, pkValues);
-                log("Successfully deleted " + pkValues.size() + " rows from '" + tableName + "'.");
-                loadTableData(tableName);
+                // Large selections take a while, so delete in the background and report progress per chunk.
+                Task<Integer> deleteTask = new Task<Integer>() {
+                    @Override
+                    protected Integer call() throws Exception {
+                        return dbHelper.deleteMultipleRows(tableName, pkColumnName, pkValues,
+                                (done, total) -> updateMessage("Deleting from '" + tableName + "': " + done + "/" + total + " keys processed..."));
+                    }
+                };
+                deleteTask.messageProperty().addListener((obs, oldMsg, newMsg) -> log(newMsg));
+                deleteTask.setOnSucceeded(e -> {
+                    log("Successfully deleted " + deleteTask.getValue() + " rows from '" + tableName + "'.");
+                    if (tableName.equals(displayedTable)) {
+                        applyRowChanges(pkValues, Collections.emptyMap());
+                    }
+                });
+                deleteTask.setOnFailed(e -> {
+                    showError("Deletion Error", "Could not delete the selected rows. No rows were deleted.", deleteTask.getException().getMessage());
+                    log("Error deleting rows: " + deleteTask.getException().getMessage());
+                });
+                Thread worker = new Thread(deleteTask, "bulk-delete");
+                worker.setDaemon(true);
+                worker.start();
             }
         } catch (Exception e) {
             showError("Deletion Error", "Could not delete the selected rows.", e.getMessage());
@@ -183,15 +632,110 @@ public class FxDb extends Application {
         }
     }
 
+    // Deletes by the filters instead of by key, so selections far larger than a page stay one statement.
+    private void deleteAllMatching(DatabaseHelper.TableQuery query, long count) {
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Confirm Deletion");
+        confirm.setHeaderText("Delete " + count + " row(s) from table '" + query.tableName + "'?");
+        confirm.setContentText("This action cannot be undone. All " + describeMatching(query)
+                + " will be deleted, including those on other pages.");
+        if (confirm.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) return;
+        Task<Integer> deleteTask = new Task<Integer>() {
+            @Override
+            protected Integer call() throws Exception {
+                return dbHelper.deleteMatchingRows(query);
+            }
+        };
+        deleteTask.setOnSucceeded(e -> {
+            log("Successfully deleted " + deleteTask.getValue() + " rows from '" + query.tableName + "'.");
+            rowSelection.clear();
+            matchingQuery = null;
+            if (query.tableName.equals(displayedTable)) {
+                loadPage(currentPageQuery.withOffset(0));
+            }
+        });
+        deleteTask.setOnFailed(e -> {
+            showError("Deletion Error", "Could not delete the matching rows. No rows were deleted.", deleteTask.getException().getMessage());
+            log("Error deleting rows: " + deleteTask.getException().getMessage());
+        });
+        log("Deleting all " + describeMatching(query) + "...");
+        Thread worker = new Thread(deleteTask, "bulk-delete");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Checks every row the current filters match, on all pages; deleting then goes by the filters.
+    private void handleCheckAllMatching() {
+        if (!showsTableRows()) return;
+        DatabaseHelper.TableQuery query = currentPageQuery;
+        long request = pageRequest;
+        dbHelper.countRowsAsync(query).whenCompleteAsync((count, error) -> {
+            if (request != pageRequest) return; // another page, filter or table by now
+            if (error != null) {
+                showError("Count Error", "Could not count the matching rows.", error.getMessage());
+                return;
+            }
+            matchingQuery = query;
+            matchingCount = count;
+            rowSelection.selectAllMatching();
+            dataTableView.refresh();
+            log(count + " row(s) checked: all " + describeMatching(query) + ", on every page.");
+        }, Platform::runLater);
+    }
+
+    private static String describeMatching(DatabaseHelper.TableQuery query) {
+        if (query.filters.isEmpty()) return "rows of '" + query.tableName + "'";
+        return "rows of '" + query.tableName + "' where " + query.filters.entrySet().stream()
+                .map(filter -> filter.getKey() + " starts with '" + filter.getValue() + "'")
+                .collect(Collectors.joining(" and "));
+    }
+
+    // Checks every row between the first and last highlighted row (shift-click a range, then check it).
+    private void handleCheckHighlightedRows() {
+        if (!showsTableRows()) return;
+        List<Integer> highlighted = dataTableView.getSelectionModel().getSelectedIndices();
+        if (highlighted.isEmpty()) {
+            showError("No Selection", "No rows highlighted.", "Click or shift-click rows in the grid first.");
+            return;
+        }
+        rowSelection.selectRange(Collections.min(highlighted), Collections.max(highlighted));
+        dataTableView.refresh();
+        log(rowSelection.selectedCount() + " row(s) checked.");
+    }
+
     // --- The rest of the methods are unchanged ---
 
     private VBox createLeftPanel() {
         Label label = new Label("Database Tables");
         label.setStyle("-fx-font-size: 16px; -fx-font-weight: bold;");
         tableListView = new ListView<>();
+        // Hovering or keyboard-focusing a table warms its first page, so selecting it is usually a cache hit.
+        tableListView.setCellFactory(list -> {
+            ListCell<String> cell = new ListCell<>() {
+                @Override
+                protected void updateItem(String item, boolean empty) {
+                    super.updateItem(item, empty);
+                    setText(empty ? null : item);
+                }
+            };
+            cell.hoverProperty().addListener((obs, wasHovered, hovered) -> {
+                if (hovered && !cell.isEmpty()) prefetchTable(cell.getItem());
+            });
+            return cell;
+        });
+        tableListView.getFocusModel().focusedIndexProperty().addListener((obs, oldIndex, index) -> {
+            // Arrow keys move one row at a time, so the rows either side are the likely next stops.
+            List<String> items = tableListView.getItems();
+            for (int i = index.intValue() - 1; i <= index.intValue() + 1; i++) {
+                if (i >= 0 && i < items.size()) prefetchTable(items.get(i));
+            }
+        });
         Button refreshBtn = new Button("Refresh List");
         refreshBtn.setMaxWidth(Double.MAX_VALUE);
-        refreshBtn.setOnAction(e -> refreshTableList());
+        refreshBtn.setOnAction(e -> {
+            dbHelper.invalidateResultCache(); // picks up changes made outside this window
+            refreshTableList();
+        });
         VBox leftPanel = new VBox(10, label, tableListView, refreshBtn);
         tableListView.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
             if (newVal != null) {
@@ -330,6 +874,7 @@ public class FxDb extends Application {
         dropColumnButton.setOnAction(e -> handleDropColumn());
         VBox dropBox = new VBox(10, dropTitle, dropColumnComboBox, dropColumnButton);
         container.getChildren().addAll(dropBox);
+        if (actionPanelTable != null) fillDropColumnChoices(actionPanelTable);
         return container;
     }
     
@@ -346,6 +891,7 @@ public class FxDb extends Application {
         confirm.setHeaderText("PERMANENTLY DELETE column '" + columnToDrop + "' from table '" + tableName + "'?");
         confirm.setContentText("This is a destructive operation and cannot be undone. All data in this column will be lost.");
         if (confirm.showAndWait().orElse(ButtonType.CANCEL) == ButtonType.OK) {
+            flushPendingEdits();
             try {
                 String sql = "ALTER TABLE " + tableName + " DROP COLUMN " + columnToDrop;
                 dbHelper.executeUpdateOrDelete(sql);
@@ -363,7 +909,11 @@ public class FxDb extends Application {
         insertForm = new VBox(10);
         insertForm.setPadding(new Insets(15));
         insertForm.setAlignment(Pos.TOP_LEFT);
-        insertForm.getChildren().add(new Label("Select a table to see insert form."));
+        if (actionPanelTable != null) {
+            fillInsertForm(actionPanelTable);
+        } else {
+            insertForm.getChildren().add(new Label("Select a table to see insert form."));
+        }
         return insertForm;
     }
 
@@ -384,7 +934,10 @@ public class FxDb extends Application {
         Button updateButton = new Button("Execute Update");
         updateButton.setMaxWidth(Double.MAX_VALUE);
         updateButton.setOnAction(e -> handleUpdate());
-        VBox updateBox = new VBox(15, title, grid, updateButton);
+        Button explainButton = new Button("Explain WHERE");
+        explainButton.setMaxWidth(Double.MAX_VALUE);
+        explainButton.setOnAction(e -> handleExplainWhere(updateWhereField.getText()));
+        VBox updateBox = new VBox(15, title, grid, updateButton, explainButton);
         updateBox.setPadding(new Insets(15));
         return updateBox;
     }
@@ -397,11 +950,14 @@ public class FxDb extends Application {
         Button deleteButton = new Button("Execute Delete");
         deleteButton.setMaxWidth(Double.MAX_VALUE);
         deleteButton.setOnAction(e -> handleDelete());
+        Button explainButton = new Button("Explain WHERE");
+        explainButton.setMaxWidth(Double.MAX_VALUE);
+        explainButton.setOnAction(e -> handleExplainWhere(deleteWhereField.getText()));
         Button dropTableButton = new Button("Drop (Delete) Entire Table");
         dropTableButton.setMaxWidth(Double.MAX_VALUE);
         dropTableButton.setStyle("-fx-background-color: #ff6666; -fx-text-fill: white;");
         dropTableButton.setOnAction(e -> handleDropTable());
-        VBox deleteBox = new VBox(15, title, new Label("WHERE Clause:"), deleteWhereField, deleteButton, new Separator(), dropTableButton);
+        VBox deleteBox = new VBox(15, title, new Label("WHERE Clause:"), deleteWhereField, deleteButton, explainButton, new Separator(), dropTableButton);
         deleteBox.setPadding(new Insets(15));
         return deleteBox;
     }
@@ -412,21 +968,79 @@ public class FxDb extends Application {
         customSqlArea = new TextArea();
         customSqlArea.setPromptText("Enter any SQL command (SELECT, INSERT, CREATE TABLE, etc.)");
         customSqlArea.setPrefRowCount(10);
-        Button executeSqlButton = new Button("Execute");
+        executeSqlButton = new Button("Execute");
         executeSqlButton.setMaxWidth(Double.MAX_VALUE);
         executeSqlButton.setOnAction(e -> handleExecuteCustomSql());
-        Button executeFromFileButton = new Button("Execute from File...");
+        cancelSqlButton = new Button("Cancel");
+        cancelSqlButton.setDisable(true);
+        cancelSqlButton.setOnAction(e -> handleCancelSql());
+        HBox executeBox = new HBox(10, executeSqlButton, cancelSqlButton);
+        HBox.setHgrow(executeSqlButton, Priority.ALWAYS);
+        executeFromFileButton = new Button("Execute from File...");
         executeFromFileButton.setMaxWidth(Double.MAX_VALUE);
         executeFromFileButton.setOnAction(e -> handleExecuteSqlFromFile());
-        VBox sqlBox = new VBox(15, title, customSqlArea, executeSqlButton, executeFromFileButton);
+        Button explainButton = new Button("Explain");
+        explainButton.setOnAction(e -> handleExplain(customSqlArea.getText()));
+        explainAnalyzeCheckBox = new CheckBox("Analyze (runs the query)");
+        HBox explainBox = new HBox(10, explainButton, explainAnalyzeCheckBox);
+        explainBox.setAlignment(Pos.CENTER_LEFT);
+        VBox sqlBox = new VBox(15, title, customSqlArea, executeBox, executeFromFileButton, explainBox);
         sqlBox.setPadding(new Insets(15));
         return sqlBox;
     }
 
+    private VBox createStatsTab() {
+        Label title = new Label("Query Statistics");
+        title.setStyle("-fx-font-weight: bold;");
+        statsArea = new TextArea();
+        statsArea.setEditable(false);
+        statsArea.setStyle("-fx-font-family: monospace;");
+        statsArea.setPrefRowCount(20);
+        VBox.setVgrow(statsArea, Priority.ALWAYS);
+        Button refreshButton = new Button("Refresh");
+        refreshButton.setOnAction(e -> refreshStats());
+        Button resetButton = new Button("Reset");
+        resetButton.setOnAction(e -> {
+            dbHelper.getQueryStats().reset();
+            refreshStats();
+        });
+        slowQueryThresholdField = new TextField(String.valueOf(dbHelper.getQueryStats().getSlowThresholdMillis()));
+        slowQueryThresholdField.setPrefColumnCount(6);
+        Button applyThresholdButton = new Button("Set");
+        applyThresholdButton.setOnAction(e -> handleSetSlowQueryThreshold());
+        HBox controls = new HBox(10, refreshButton, resetButton, new Label("Slow query (ms):"), slowQueryThresholdField, applyThresholdButton);
+        controls.setAlignment(Pos.CENTER_LEFT);
+        VBox statsBox = new VBox(15, title, controls, statsArea);
+        statsBox.setPadding(new Insets(15));
+        return statsBox;
+    }
+
+    private void refreshStats() {
+        statsArea.setText(dbHelper.getQueryStats().report() + "\n" + dbHelper.getStatementCacheStats() + "\n" + dbHelper.getResultCacheStats());
+    }
+
+    private void handleSetSlowQueryThreshold() {
+        try {
+            long millis = Long.parseLong(slowQueryThresholdField.getText().trim());
+            dbHelper.getQueryStats().setSlowThresholdMillis(millis);
+            log("Slow-query threshold set to " + dbHelper.getQueryStats().getSlowThresholdMillis() + " ms.");
+            refreshStats();
+        } catch (NumberFormatException e) {
+            showError("Invalid Threshold", "The slow-query threshold must be a whole number of milliseconds.", e.getMessage());
+        }
+    }
+
+    private void showTableNames(List<String> tableNames) {
+        tableListView.setItems(FXCollections.observableArrayList(tableNames));
+        if (tableNames.size() <= PREFETCH_ALL_MAX_TABLES) {
+            tableNames.forEach(this::prefetchTable);
+        }
+    }
+
     private void refreshTableList() {
         try {
             List<String> tableNames = dbHelper.getTableNames();
-            tableListView.setItems(FXCollections.observableArrayList(tableNames));
+            showTableNames(tableNames);
             log("Successfully fetched table list from the database.");
         } catch (SQLException e) {
             showError("Database Error", "Could not fetch table list.", e.getMessage());
@@ -434,17 +1048,30 @@ public class FxDb extends Application {
         }
     }
 
-    @SuppressWarnings("unchecked")
+    // Tabs not built yet pick the table up when they are first opened.
     private void updateActionPanelForTable(String tableName) {
         currentTableLabel.setText("Table: " + tableName);
+        actionPanelTable = tableName;
+        if (insertForm != null) fillInsertForm(tableName);
+        if (dropColumnComboBox != null) fillDropColumnChoices(tableName);
+    }
+
+    private void fillDropColumnChoices(String tableName) {
+        try {
+            dropColumnComboBox.setItems(FXCollections.observableArrayList(dbHelper.getColumnNames(tableName)));
+            dropColumnComboBox.getSelectionModel().clearSelection();
+        } catch (SQLException e) {
+            log("Error loading columns of '" + tableName + "': " + e.getMessage());
+        }
+    }
+
+    private void fillInsertForm(String tableName) {
         insertForm.getChildren().clear();
         GridPane insertGrid = new GridPane();
         insertGrid.setHgap(10);
         insertGrid.setVgap(10);
         try {
             List<String> columnNames = dbHelper.getColumnNames(tableName);
-            dropColumnComboBox.setItems(FXCollections.observableArrayList(columnNames));
-            dropColumnComboBox.getSelectionModel().clearSelection();
             for (int i = 0; i < columnNames.size(); i++) {
                 Label label = new Label(columnNames.get(i) + ":");
                 TextField field = new TextField();
@@ -455,7 +1082,10 @@ public class FxDb extends Application {
             Button insertButton = new Button("Insert New Row");
             insertButton.setMaxWidth(Double.MAX_VALUE);
             insertButton.setOnAction(e -> handleInsert(tableName, columnNames, insertGrid));
-            insertForm.getChildren().addAll(insertGrid, insertButton);
+            Button importButton = new Button("Import CSV...");
+            importButton.setMaxWidth(Double.MAX_VALUE);
+            importButton.setOnAction(e -> handleImport(tableName));
+            insertForm.getChildren().addAll(insertGrid, insertButton, importButton);
         } catch (SQLException e) {
             insertForm.getChildren().add(new Label("Error loading form: " + e.getMessage()));
             log("Error creating insert form for '" + tableName + "': " + e.getMessage());
@@ -476,8 +1106,12 @@ public class FxDb extends Application {
         }
         try {
             dbHelper.insertRow(tableName, values);
-            log("Successfully inserted a new row into '" + tableName + "'.");
-            loadTableData(tableName);
+            log("Successfully inserted a new row into '" + tableName + "'. " + dbHelper.getStatementCacheStats());
+            if (tableName.equals(displayedTable)) {
+                loadPage(currentPageQuery); // the new row's place depends on the page's sort, filters and offset
+            } else {
+                loadTableData(tableName);
+            }
         } catch (SQLException e) {
             showError("Insert Error", "Could not insert the new row.", e.getMessage());
             log("Error inserting row into '" + tableName + "': " + e.getMessage());
@@ -493,10 +1127,24 @@ public class FxDb extends Application {
             showError("Update Error", "Both SET and WHERE clauses are required.", "Please provide values for both fields.");
             return;
         }
+        flushPendingEdits();
         try {
-            int rowsAffected = dbHelper.executeUpdateOrDelete("UPDATE " + tableName + " SET " + setClause + " WHERE " + whereClause);
-            log("Update successful. " + rowsAffected + " row(s) affected in '" + tableName + "'.");
-            loadTableData(tableName);
+            // Remember which rows the WHERE matches now, so only those are re-read afterwards.
+            // If the SET changes the key itself, the old keys are useless and we reload instead.
+            boolean patchable = tableName.equals(displayedTable) && displayedPkColumn != null
+                    && !DatabaseHelper.setsColumn(setClause, displayedPkColumn);
+            String sql = "UPDATE " + tableName + " SET " + setClause + " WHERE " + whereClause;
+            DatabaseHelper.KeyedWrite write = patchable
+                    ? dbHelper.executeWriteWhere(sql, tableName, displayedPkColumn, whereClause, PAGE_SIZE)
+                    : new DatabaseHelper.KeyedWrite(dbHelper.executeUpdateOrDelete(sql), null);
+            log("Update successful. " + write.rowsAffected + " row(s) affected in '" + tableName + "'.");
+            if (!patchable) {
+                loadTableData(tableName);
+            } else if (write.keys == null) {
+                loadPage(currentPageQuery); // more rows than a page, patching them would not be cheaper
+            } else {
+                refreshRows(tableName, displayedPkColumn, write.keys);
+            }
         } catch (SQLException e) {
             showError("Update Error", "The SQL update statement failed.", e.getMessage());
             log("Error executing update on '" + tableName + "': " + e.getMessage());
@@ -517,11 +1165,23 @@ public class FxDb extends Application {
                 return;
             }
         }
+        flushPendingEdits();
         String sql = "DELETE FROM " + tableName + (whereClause.isEmpty() ? "" : " WHERE " + whereClause);
         try {
-            int rowsAffected = dbHelper.executeUpdateOrDelete(sql);
-            log("Delete successful. " + rowsAffected + " row(s) deleted from '" + tableName + "'.");
-            loadTableData(tableName);
+            boolean patchable = tableName.equals(displayedTable) && displayedPkColumn != null;
+            DatabaseHelper.KeyedWrite write = patchable && !whereClause.isEmpty()
+                    ? dbHelper.executeWriteWhere(sql, tableName, displayedPkColumn, whereClause, PAGE_SIZE)
+                    : new DatabaseHelper.KeyedWrite(dbHelper.executeUpdateOrDelete(sql), null);
+            log("Delete successful. " + write.rowsAffected + " row(s) deleted from '" + tableName + "'.");
+            if (!patchable) {
+                loadTableData(tableName);
+            } else if (whereClause.isEmpty()) {
+                dataTableView.getItems().clear();
+            } else if (write.keys == null) {
+                loadPage(currentPageQuery);
+            } else {
+                applyRowChanges(write.keys, Collections.emptyMap());
+            }
         } catch (SQLException e) {
             showError("Delete Error", "The SQL delete statement failed.", e.getMessage());
             log("Error executing delete on '" + tableName + "': " + e.getMessage());
@@ -536,12 +1196,14 @@ public class FxDb extends Application {
         confirm.setHeaderText("You are about to PERMANENTLY DELETE the entire table '" + tableName + "'.");
         confirm.setContentText("This is a destructive operation and cannot be undone. Are you sure?");
         if (confirm.showAndWait().orElse(ButtonType.CANCEL) == ButtonType.OK) {
+            flushPendingEdits();
             try {
                 dbHelper.executeUpdateOrDelete("DROP TABLE " + tableName);
                 log("Table '" + tableName + "' was successfully dropped.");
                 refreshTableList();
                 dataTableView.getColumns().clear();
-                dataTableView.getItems().clear();
+                dataTableView.setItems(FXCollections.observableArrayList());
+                displayedTable = null;
                 currentTableLabel.setText("No Table Selected");
             } catch (SQLException e) {
                 showError("Drop Table Error", "Could not drop table '" + tableName + "'.", e.getMessage());
@@ -558,20 +1220,215 @@ public class FxDb extends Application {
             showError("SQL Error", "No SQL command entered.", "Please type a command in the text area.");
             return;
         }
+        flushPendingEdits();
+        runScript(sql, "custom SQL");
+    }
+
+    // Sends the whole buffer in one round trip on a background thread, so the Cancel button stays usable.
+    private void runScript(String sql, String source) {
+        Task<List<DatabaseHelper.ScriptResult>> scriptTask = new Task<List<DatabaseHelper.ScriptResult>>() {
+            @Override
+            protected List<DatabaseHelper.ScriptResult> call() throws Exception {
+                return dbHelper.executeScript(sql);
+            }
+        };
+        scriptTask.setOnSucceeded(e -> {
+            setScriptRunning(false);
+            showScriptOutcome(sql, source, scriptTask.getValue());
+        });
+        scriptTask.setOnFailed(e -> {
+            setScriptRunning(false);
+            showError("SQL Execution Error", "The SQL command failed.", scriptTask.getException().getMessage());
+            log("Error executing " + source + ": " + scriptTask.getException().getMessage());
+        });
+        setScriptRunning(true);
+        log("Executing " + source + "...");
+        Thread worker = new Thread(scriptTask, "sql-script");
+        scriptWorker = worker;
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void setScriptRunning(boolean running) {
+        executeSqlButton.setDisable(running);
+        executeFromFileButton.setDisable(running);
+        cancelSqlButton.setDisable(!running);
+    }
+
+    private void handleCancelSql() {
+        int cancelled = scriptWorker == null ? 0 : dbHelper.cancelRunningQueries(scriptWorker); // leaves other windows' queries alone
+        log(cancelled > 0 ? "Cancelling the running statement..." : "Nothing to cancel; the statement already finished.");
+    }
+
+    // A lone query still goes to the main grid (so it can be exported); several results each get a tab of their own.
+    private void showScriptOutcome(String sql, String source, List<DatabaseHelper.ScriptResult> results) {
+        DatabaseHelper.ScriptResult last = results.isEmpty() ? null : results.get(results.size() - 1);
+        if (results.size() == 1 && last.data != null) {
+            displayQueryResult(last.data);
+            currentQuerySql = sql;
+            log("Executed SELECT query. " + last.data.rows.size() + " rows returned in " + formatMillis(last.elapsedNanos) + "."
+                    + (last.data.isOffHeap() ? " (large result kept off-heap)" : ""));
+            if (last.data.hasMoreRows) {
+                log("Only the first " + DatabaseHelper.MAX_QUERY_ROWS + " rows were read; narrow the query or raise -Dfxdb.maxQueryRows.");
+            }
+        } else if (results.size() == 1 && last.error == null) {
+            log("Executed non-query command. " + last.updateCount + " row(s) affected in " + formatMillis(last.elapsedNanos) + ".");
+        } else if (results.size() > 1) {
+            showScriptResults(results);
+            long totalNanos = results.stream().mapToLong(r -> r.elapsedNanos).sum();
+            log("Executed " + source + ": " + results.size() + " results in " + formatMillis(totalNanos) + " over one connection.");
+            if (results.stream().anyMatch(r -> r.data != null && r.data.hasMoreRows)) {
+                log("Some results were cut off at " + DatabaseHelper.MAX_QUERY_ROWS + " rows.");
+            }
+        }
+        if (last != null && last.error != null) {
+            showError("SQL Execution Error", "Statement result " + last.index + " failed; the rest of the script was not run.", last.error);
+            log("Error executing " + source + ": " + last.error);
+        }
+        if (results.stream().anyMatch(r -> r.data == null)) {
+            refreshTableList();
+        }
+    }
+
+    // The WHERE of an UPDATE or DELETE is explained as the equivalent SELECT, so nothing is changed.
+    private void handleExplainWhere(String whereClause) {
+        String tableName = getSelectedTable();
+        if (tableName == null) return;
+        if (whereClause == null || whereClause.trim().isEmpty()) {
+            showError("Explain Error", "No WHERE clause entered.", "Without a WHERE clause every row is read by a full scan.");
+            return;
+        }
+        handleExplain("SELECT * FROM " + tableName + " WHERE " + whereClause);
+    }
+
+    private void handleExplain(String sql) {
+        if (sql == null || sql.trim().isEmpty()) {
+            showError("Explain Error", "No SQL command entered.", "Please type a SELECT statement to explain.");
+            return;
+        }
+        boolean analyze = explainAnalyzeCheckBox != null && explainAnalyzeCheckBox.isSelected(); // SQL tab may not be built yet
         try {
-            if (sql.trim().toLowerCase().startsWith("select")) {
-                DatabaseHelper.TableData resultData = dbHelper.executeGenericQuery(sql);
-                displayQueryResult(resultData);
-                log("Executed SELECT query. " + resultData.rows.size() + " rows returned.");
-            } else {
-                int rowsAffected = dbHelper.executeUpdateOrDelete(sql);
-                log("Executed non-query command. " + rowsAffected + " row(s) affected.");
-                refreshTableList();
+            QueryPlan plan = dbHelper.explain(sql, analyze);
+            showPlan(sql, plan);
+            log("Explained query" + (analyze ? " with ANALYZE" : "") + ": " + plan.scannedTables.size() + " full scan(s), "
+                    + plan.suggestions.size() + " index suggestion(s).");
+        } catch (SQLException e) {
+            showError("Explain Error", "Could not explain the query.", e.getMessage());
+            log("Error explaining query: " + e.getMessage());
+        }
+    }
+
+    private void showPlan(String sql, QueryPlan plan) {
+        Label sqlLabel = new Label(sql.trim());
+        sqlLabel.setWrapText(true);
+        sqlLabel.setStyle("-fx-font-family: monospace;");
+        TreeView<QueryPlan.Node> tree = new TreeView<>(toTreeItem(plan.root));
+        tree.setCellFactory(view -> new TreeCell<QueryPlan.Node>() {
+            @Override
+            protected void updateItem(QueryPlan.Node node, boolean empty) {
+                super.updateItem(node, empty);
+                setText(empty || node == null ? null : node.toString());
+                setStyle(!empty && node != null && node.fullScan ? "-fx-text-fill: #cc0000;" : "");
+            }
+        });
+        VBox.setVgrow(tree, Priority.ALWAYS);
+        VBox content = new VBox(10, sqlLabel, tree);
+        for (String warning : plan.warnings) {
+            Label label = new Label("Warning: " + warning);
+            label.setStyle("-fx-text-fill: #cc0000; -fx-font-weight: bold;");
+            content.getChildren().add(label);
+        }
+        if (plan.suggestions.isEmpty()) {
+            content.getChildren().add(new Label("No index suggestions."));
+        }
+        for (String createSql : plan.suggestions) {
+            Button createButton = new Button("Create");
+            createButton.setOnAction(e -> handleCreateIndex(createSql, createButton));
+            Label label = new Label(createSql);
+            label.setStyle("-fx-font-family: monospace;");
+            HBox row = new HBox(10, createButton, label);
+            row.setAlignment(Pos.CENTER_LEFT);
+            content.getChildren().add(row);
+        }
+        content.setPadding(new Insets(10));
+        if (planTab == null || !centerTabPane.getTabs().contains(planTab)) {
+            planTab = new Tab("Plan");
+            centerTabPane.getTabs().add(planTab);
+        }
+        planTab.setContent(content);
+        centerTabPane.getSelectionModel().select(planTab);
+    }
+
+    private static TreeItem<QueryPlan.Node> toTreeItem(QueryPlan.Node node) {
+        TreeItem<QueryPlan.Node> item = new TreeItem<>(node);
+        for (QueryPlan.Node child : node.children) {
+            item.getChildren().add(toTreeItem(child));
+        }
+        item.setExpanded(true);
+        return item;
+    }
+
+    private void handleCreateIndex(String createSql, Button createButton) {
+        try {
+            dbHelper.executeUpdateOrDelete(createSql);
+            createButton.setDisable(true);
+            log("Created index: " + createSql);
+            if (displayedTable != null) {
+                displayedIndexedColumns = dbHelper.getIndexedColumns(displayedTable);
             }
         } catch (SQLException e) {
-            showError("SQL Execution Error", "The SQL command failed.", e.getMessage());
-            log("Error executing custom SQL: " + e.getMessage());
+            showError("Create Index Error", "Could not create the index.", e.getMessage());
+            log("Error creating index: " + e.getMessage());
+        }
+    }
+
+    // One closable tab per result; a tab's grid is only built the first time it is opened.
+    private void showScriptResults(List<DatabaseHelper.ScriptResult> results) {
+        centerTabPane.getTabs().remove(1, centerTabPane.getTabs().size()); // removing does not fire onClosed
+        scriptResults.forEach(DatabaseHelper.ScriptResult::close);
+        scriptResults.clear();
+        scriptResults.addAll(results);
+        for (DatabaseHelper.ScriptResult result : results) {
+            String summary = result.error != null ? "error"
+                    : result.data != null ? result.data.rows.size() + (result.data.hasMoreRows ? "+" : "") + " rows"
+                    : result.updateCount + " affected";
+            Tab tab = new Tab("Result " + result.index + " (" + summary + ", " + formatMillis(result.elapsedNanos) + ")");
+            tab.setOnSelectionChanged(e -> {
+                if (tab.isSelected() && tab.getContent() == null) tab.setContent(buildScriptResultView(result));
+            });
+            tab.setOnClosed(e -> {
+                scriptResults.remove(result);
+                result.close();
+            });
+            centerTabPane.getTabs().add(tab);
+        }
+        centerTabPane.getSelectionModel().select(1);
+    }
+
+    private Node buildScriptResultView(DatabaseHelper.ScriptResult result) {
+        if (result.data == null) {
+            Label message = new Label(result.error != null ? "Error: " + result.error
+                    : result.updateCount + " row(s) affected in " + formatMillis(result.elapsedNanos) + ".");
+            message.setWrapText(true);
+            if (result.error != null) message.setStyle("-fx-text-fill: #cc0000;");
+            VBox box = new VBox(message);
+            box.setPadding(new Insets(10));
+            return box;
         }
+        TableView<ObservableList<String>> view = new TableView<>();
+        for (int i = 0; i < result.data.headers.size(); i++) {
+            final int colIndex = i;
+            TableColumn<ObservableList<String>, String> column = new TableColumn<>(result.data.headers.get(i));
+            column.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().get(colIndex)));
+            column.setSortable(!result.data.isOffHeap()); // off-heap results are read-only
+            view.getColumns().add(column);
+        }
+        view.setItems(result.data.rows);
+        return view;
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%.1f ms", nanos / 1e6);
     }
 
     private void handleExecuteSqlFromFile() {
@@ -580,28 +1437,94 @@ public class FxDb extends Application {
         fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("SQL Files", "*.sql"));
         File file = fileChooser.showOpenDialog(primaryStage);
         if (file != null) {
+            flushPendingEdits();
             try {
                 String content = new String(Files.readAllBytes(Paths.get(file.getAbsolutePath())));
-                String[] statements = content.split(";\\s*");
-                int successCount = 0;
-                for (String stmt : statements) {
-                    if (!stmt.trim().isEmpty()) {
-                        try {
-                            dbHelper.executeUpdateOrDelete(stmt);
-                            successCount++;
-                        } catch (SQLException e) {
-                            log("Error in script '" + file.getName() + "': " + e.getMessage() + " [SQL: " + stmt.substring(0, Math.min(50, stmt.length())) + "...]");
-                        }
-                    }
+                if (!content.trim().isEmpty()) {
+                    runScript(content, "script '" + file.getName() + "'");
                 }
-                log("Executed " + successCount + " statements from '" + file.getName() + "'.");
-                refreshTableList();
             } catch (IOException e) {
                 showError("File Read Error", "Could not read the selected file.", e.getMessage());
             }
         }
     }
 
+    // Exports the displayed table (all pages) or re-runs the displayed custom query, streaming straight to disk.
+    private void handleExport() {
+        String tableName = displayedTable;
+        String querySql = tableName == null ? currentQuerySql : null;
+        if (tableName == null && querySql == null) {
+            showError("Nothing to Export", "No table or query result is displayed.", "Select a table or run a query first.");
+            return;
+        }
+        flushPendingEdits();
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export to CSV");
+        fileChooser.setInitialFileName((tableName != null ? tableName : "query") + ".csv");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV Files", "*.csv"),
+                new FileChooser.ExtensionFilter("Compressed CSV Files", "*.csv.gz"));
+        File file = fileChooser.showSaveDialog(primaryStage);
+        if (file == null) return;
+        boolean gzip = file.getName().endsWith(".gz");
+        String source = tableName != null ? "table '" + tableName + "'" : "query result";
+        Task<Long> exportTask = new Task<Long>() {
+            @Override
+            protected Long call() throws Exception {
+                if (tableName != null) {
+                    return dbHelper.exportTable(tableName, file.toPath(), gzip,
+                            (done, total) -> updateMessage("Exporting " + source + ": " + done + "/" + total + " key ranges written..."));
+                }
+                return dbHelper.exportQuery(querySql, file.toPath(), gzip);
+            }
+        };
+        exportTask.messageProperty().addListener((obs, oldMsg, newMsg) -> log(newMsg));
+        exportTask.setOnSucceeded(e -> log("Exported " + exportTask.getValue() + " rows of " + source + " to '" + file.getName() + "'."));
+        exportTask.setOnFailed(e -> {
+            showError("Export Error", "Could not export the " + source + ".", exportTask.getException().getMessage());
+            log("Error exporting " + source + ": " + exportTask.getException().getMessage());
+        });
+        log("Exporting " + source + " to '" + file.getName() + "'...");
+        Thread worker = new Thread(exportTask, "csv-export");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Bulk-loads a CSV file (first line names the columns) into the table in the background.
+    private void handleImport(String tableName) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Import CSV into '" + tableName + "'");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
+        File file = fileChooser.showOpenDialog(primaryStage);
+        if (file == null) return;
+        flushPendingEdits();
+        Task<CsvImporter.Result> importTask = new Task<CsvImporter.Result>() {
+            @Override
+            protected CsvImporter.Result call() throws Exception {
+                return dbHelper.importCsv(tableName, file.toPath(),
+                        (done, total) -> updateMessage("Importing into '" + tableName + "': " + done + " rows committed..."));
+            }
+        };
+        importTask.messageProperty().addListener((obs, oldMsg, newMsg) -> log(newMsg));
+        importTask.setOnSucceeded(e -> {
+            CsvImporter.Result result = importTask.getValue();
+            log("Imported " + result.imported + " rows from '" + file.getName() + "' into '" + tableName + "'.");
+            if (result.rejected > 0) {
+                log(result.rejected + " rows were rejected; see '" + result.errorFile + "'.");
+            }
+            if (tableName.equals(displayedTable)) loadTableData(tableName);
+        });
+        importTask.setOnFailed(e -> {
+            showError("Import Error", "Could not import '" + file.getName() + "'.", importTask.getException().getMessage());
+            log("Error importing into '" + tableName + "': " + importTask.getException().getMessage());
+            if (tableName.equals(displayedTable)) loadTableData(tableName); // committed batches stay
+        });
+        log("Importing '" + file.getName() + "' into '" + tableName + "'...");
+        Thread worker = new Thread(importTask, "csv-import");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
     private String getSelectedTable() {
         String selected = tableListView.getSelectionModel().getSelectedItem();
         if (selected == null) {
@@ -613,21 +1536,43 @@ public class FxDb extends Application {
 
     private void displayQueryResult(DatabaseHelper.TableData tableData) {
         dataTableView.getColumns().clear();
-        dataTableView.getItems().clear();
+        dataTableView.setItems(FXCollections.observableArrayList());
+        releaseQueryResult();
+        rowSelection.detach();
+        currentQueryResult = tableData;
+        displayedTable = null;
+        currentPageQuery = null;
+        pageRequest++;
+        filterBar.getChildren().clear();
+        filterFields.clear();
+        pageLabel.setText(tableData.rows.size() + " rows");
+        prevPageButton.setDisable(true);
+        nextPageButton.setDisable(true);
+        dataTableView.setSortPolicy(clientSortPolicy);
         currentTableLabel.setText("Custom Query Result");
         actionTabPane.getSelectionModel().select(0);
+        centerTabPane.getSelectionModel().select(0);
         for (int i = 0; i < tableData.headers.size(); i++) {
             final int colIndex = i;
             TableColumn<ObservableList<String>, String> column = new TableColumn<>(tableData.headers.get(i));
             column.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().get(colIndex)));
             column.setEditable(false);
+            column.setSortable(!tableData.isOffHeap()); // off-heap results are read-only
             dataTableView.getColumns().add(column);
         }
         dataTableView.setItems(tableData.rows);
     }
 
+    private void releaseQueryResult() {
+        if (currentQueryResult != null) {
+            currentQueryResult.close();
+            currentQueryResult = null;
+        }
+        currentQuerySql = null;
+    }
+
     private void log(String message) {
-        logArea.appendText(message + "\n");
+        logConsole.append(message);
     }
 
     private void showError(String title, String header, String content) {
@@ -0,0 +1,128 @@
+import javafx.application.Platform;
+import javafx.stage.Stage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Keeps the JavaFX toolkit alive for the whole JVM so FxDb windows can be opened and closed any number
+ * of times, several at once, from the console menu or from a "New Window" button. All windows share one
+ * DatabaseHelper, so its connection pool and caches stay warm between windows.
+ */
+final class GuiHost {
+    private static final Object LOCK = new Object();
+    private static boolean toolkitStarted;    // guarded by LOCK
+    private static int openWindows;           // guarded by LOCK
+    private static int windowsOpened;         // FX thread only; numbers window titles
+    private static DatabaseHelper database;   // guarded by LOCK
+    private static UiStallMonitor stallMonitor; // FX thread only; one FX thread however many windows
+
+    private GuiHost() {
+    }
+
+    // Opens a window and blocks the calling (non-FX) thread until every GUI window is closed again.
+    static void showAndWait() throws InterruptedException {
+        startToolkit();
+        DatabaseHelper previous;
+        synchronized (LOCK) {
+            previous = database;
+        }
+        if (previous != null) {
+            // Kept from an earlier visit; the console manager may have written since, bypassing its caches.
+            previous.invalidateResultCache();
+        }
+        CompletableFuture<Void> opened = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                openWindow();
+                opened.complete(null);
+            } catch (Throwable t) {
+                opened.completeExceptionally(t);
+            }
+        });
+        try {
+            opened.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException("Could not open the window: " + cause, cause); // e.g. a missing JavaFX class
+        }
+        synchronized (LOCK) {
+            while (openWindows > 0) {
+                LOCK.wait();
+            }
+        }
+    }
+
+    // FX thread: another window next to the open ones. A window that fails to start after it was counted
+    // is uncounted again, so showAndWait does not wait for a window that never appeared.
+    static void openWindow() {
+        int counted = windowsOpened;
+        Stage stage = new Stage();
+        try {
+            new FxDb().start(stage);
+        } catch (Throwable t) {
+            if (windowsOpened != counted) {
+                stage.setOnHidden(null); // closeWindow would work on a half-built window
+                stage.hide();
+                windowClosed();
+            }
+            throw t;
+        }
+    }
+
+    private static void startToolkit() {
+        synchronized (LOCK) {
+            if (toolkitStarted) return;
+            Platform.startup(() -> { });
+            Platform.setImplicitExit(false); // closing the last window must not end the toolkit
+            toolkitStarted = true;
+        }
+    }
+
+    static DatabaseHelper database() {
+        synchronized (LOCK) {
+            if (database == null) {
+                database = new DatabaseHelper();
+            }
+            return database;
+        }
+    }
+
+    // FX thread, from FxDb.start; returns the window's number for its title.
+    static int windowOpened() {
+        if (stallMonitor == null) {
+            stallMonitor = new UiStallMonitor(MetricsRegistry.DEFAULT);
+        }
+        synchronized (LOCK) {
+            if (openWindows++ == 0) {
+                stallMonitor.start();
+            }
+        }
+        return ++windowsOpened;
+    }
+
+    // FX thread, once a window is hidden and has released its own resources.
+    static void windowClosed() {
+        synchronized (LOCK) {
+            if (--openWindows == 0) {
+                stallMonitor.stop(); // no window, no reason to keep pulses running
+            }
+            LOCK.notifyAll();
+        }
+    }
+
+    // Ends the toolkit and closes the shared pool; for application exit only.
+    static void shutdown() {
+        synchronized (LOCK) {
+            if (toolkitStarted) {
+                Platform.exit();
+                toolkitStarted = false;
+            }
+            if (database != null) {
+                database.close();
+                database = null;
+            }
+        }
+    }
+}
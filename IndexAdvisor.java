@@ -0,0 +1,101 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Suggests single composite indexes for tables that a plan reads by full scan or sorts.
+ * Columns compared with = / IN / IS in the WHERE clause come first, then one range column
+ * (<, >, BETWEEN, LIKE) or else the ORDER BY columns, which is the order MySQL can use them in.
+ * Nothing is suggested when an existing index already starts with the first candidate column.
+ */
+final class IndexAdvisor {
+    private static final Pattern WHERE = Pattern.compile(
+            "\\bWHERE\\b(.*?)(?:\\bGROUP\\s+BY\\b|\\bORDER\\s+BY\\b|\\bHAVING\\b|\\bLIMIT\\b|\\bFOR\\s+UPDATE\\b|$)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern ORDER_BY = Pattern.compile("\\bORDER\\s+BY\\b(.*?)(?:\\bLIMIT\\b|\\bFOR\\s+UPDATE\\b|$)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern COMPARISON = Pattern.compile(
+            "(?:\\b\\w+\\.)?`?(\\w+)`?\\s*(=|<=|>=|<>|!=|<|>|\\bIN\\b|\\bIS\\b|\\bLIKE\\b|\\bBETWEEN\\b)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern TABLE_REFERENCE = Pattern.compile(
+            "\\b(?:FROM|JOIN)\\s+`?(\\w+)`?(?:\\s+(?:AS\\s+)?`?(\\w+)`?)?", Pattern.CASE_INSENSITIVE);
+    private static final Set<String> NOT_ALIASES = Set.of("WHERE", "ON", "USING", "JOIN", "INNER", "LEFT", "RIGHT",
+            "CROSS", "STRAIGHT_JOIN", "NATURAL", "GROUP", "ORDER", "HAVING", "LIMIT", "FOR", "UNION", "WINDOW");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+
+    private IndexAdvisor() {
+    }
+
+    static void suggest(String sql, QueryPlan plan, DatabaseHelper db) {
+        String text = STRING_LITERAL.matcher(sql).replaceAll("?"); // values must not look like columns
+        // Plans name tables by alias, so map "d" back to "dept".
+        Map<String, String> tableByAlias = new LinkedHashMap<>();
+        Matcher reference = TABLE_REFERENCE.matcher(text);
+        while (reference.find()) {
+            String table = reference.group(1);
+            String alias = reference.group(2);
+            tableByAlias.putIfAbsent(table.toUpperCase(Locale.ROOT), table);
+            if (alias != null && !NOT_ALIASES.contains(alias.toUpperCase(Locale.ROOT))) {
+                tableByAlias.put(alias.toUpperCase(Locale.ROOT), table);
+            }
+        }
+        Set<String> tables = new LinkedHashSet<>();
+        for (String scanned : plan.scannedTables) {
+            tables.add(tableByAlias.getOrDefault(scanned.toUpperCase(Locale.ROOT), scanned));
+        }
+        if (plan.sorts && tables.isEmpty() && tableByAlias.size() == 1) {
+            tables.addAll(tableByAlias.values());
+        }
+        Matcher where = WHERE.matcher(text);
+        String whereClause = where.find() ? where.group(1) : "";
+        Matcher order = ORDER_BY.matcher(text);
+        String orderClause = order.find() ? order.group(1) : "";
+
+        for (String table : tables) {
+            Set<String> columns = new LinkedHashSet<>();
+            Set<String> indexed;
+            try {
+                for (String column : db.getColumnNames(table)) {
+                    columns.add(column.toUpperCase(Locale.ROOT));
+                }
+                indexed = db.getIndexedColumns(table);
+            } catch (SQLException e) {
+                continue; // derived table or view: nothing to index
+            }
+            List<String> equality = new ArrayList<>();
+            String range = null;
+            Matcher comparison = COMPARISON.matcher(whereClause);
+            while (comparison.find()) {
+                String column = comparison.group(1).toUpperCase(Locale.ROOT);
+                String operator = comparison.group(2).toUpperCase(Locale.ROOT);
+                if (!columns.contains(column) || equality.contains(column)) continue;
+                if (operator.equals("=") || operator.equals("IN") || operator.equals("IS")) {
+                    equality.add(column);
+                } else if (range == null && !operator.equals("<>") && !operator.equals("!=")) {
+                    range = column;
+                }
+            }
+            List<String> key = new ArrayList<>(equality);
+            if (range != null) {
+                if (!key.contains(range)) key.add(range);
+            } else {
+                for (String part : orderClause.split(",")) {
+                    String column = part.trim().replaceAll("(?i)\\s+(ASC|DESC)$", "").replaceAll("^.*\\.", "")
+                            .replace("`", "").toUpperCase(Locale.ROOT);
+                    if (columns.contains(column) && !key.contains(column)) key.add(column);
+                }
+            }
+            if (key.isEmpty() || indexed.contains(key.get(0))) continue;
+            String name = ("idx_" + table + "_" + String.join("_", key)).toLowerCase(Locale.ROOT);
+            if (name.length() > 64) name = name.substring(0, 64); // MySQL identifier limit
+            plan.suggestions.add("CREATE INDEX " + name + " ON " + table + " (" + String.join(", ", key) + ")");
+        }
+    }
+}
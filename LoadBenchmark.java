@@ -0,0 +1,355 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives DatabaseHelper with a weighted mix of operations from many threads against the local database
+ * and reports throughput and latency percentiles per operation. The data lives in BENCH_DEPT / BENCH_EMP,
+ * copies of the DEPT / EMP definitions in javafiles.txt filled with generated rows, so real data is untouched.
+ *
+ * <pre>
+ * java LoadBenchmark --threads=16 --duration=30 --warmup=5 --rows=10000 --depts=50
+ *                    --mix=read:5,insert:30,update:40,delete:15,query:10 --delete-batch=10 --csv=bench.csv --keep
+ * </pre>
+ */
+public class LoadBenchmark {
+    private static final String SETUP_FILE = "javafiles.txt";
+    private static final String DEPT_TABLE = "BENCH_DEPT";
+    private static final String EMP_TABLE = "BENCH_EMP";
+    private static final String[] JOBS = {"CLERK", "SALESMAN", "MANAGER", "ANALYST", "PRESIDENT"};
+    private static final String[] OPERATIONS = {"read", "insert", "update", "delete", "query"};
+
+    private final DatabaseHelper db;
+    private final int rows;
+    private final int depts;
+    private final int deleteBatch;
+    private final AtomicLong nextEmpno = new AtomicLong();
+    private final ConcurrentLinkedQueue<String> insertedKeys = new ConcurrentLinkedQueue<>(); // deletes take these first
+
+    // Results of one operation type for the measured phase.
+    private static class OperationStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        volatile String lastError;
+    }
+
+    private LoadBenchmark(DatabaseHelper db, int rows, int depts, int deleteBatch) {
+        this.db = db;
+        this.rows = rows;
+        this.depts = depts;
+        this.deleteBatch = deleteBatch;
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options;
+        int threads, durationSeconds, warmupSeconds, rows, depts, deleteBatch;
+        int[] weights;
+        try {
+            options = parseOptions(args);
+            threads = intOption(options, "threads", 16);
+            durationSeconds = intOption(options, "duration", 30);
+            warmupSeconds = intOption(options, "warmup", 5);
+            rows = intOption(options, "rows", 10_000);
+            depts = intOption(options, "depts", 50);
+            deleteBatch = intOption(options, "delete-batch", 10);
+            weights = parseMix(options.getOrDefault("mix", "read:5,insert:30,update:40,delete:15,query:10"));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid option: " + e.getMessage());
+            return;
+        }
+
+        DatabaseHelper db = new DatabaseHelper();
+        LoadBenchmark benchmark = new LoadBenchmark(db, rows, depts, deleteBatch);
+        try {
+            System.out.println("Seeding " + depts + " departments and " + rows + " employees...");
+            benchmark.seed();
+            if (warmupSeconds > 0) {
+                System.out.println("Warming up for " + warmupSeconds + " s with " + threads + " threads...");
+                benchmark.run(threads, warmupSeconds, weights);
+            }
+            System.out.println("Measuring for " + durationSeconds + " s with " + threads + " threads, mix " + describeMix(weights) + "...");
+            long start = System.nanoTime();
+            Map<String, OperationStats> results = benchmark.run(threads, durationSeconds, weights);
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.print(report(results, elapsedSeconds));
+            System.out.println(db.getStatementCacheStats());
+            String csvFile = options.get("csv");
+            if (csvFile != null) {
+                appendCsv(Paths.get(csvFile), results, elapsedSeconds, threads);
+                System.out.println("Results appended to " + csvFile);
+            }
+        } catch (SQLException e) {
+            System.err.println("Benchmark failed: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Benchmark failed on file " + e.getMessage() + " (run from the project directory so " + SETUP_FILE + " is found)");
+        } finally {
+            if (!options.containsKey("keep")) {
+                benchmark.dropTables();
+            }
+            db.close();
+        }
+    }
+
+    // Recreates the tables from javafiles.txt and bulk-loads generated rows through the CSV importer.
+    private void seed() throws SQLException, IOException {
+        dropTables();
+        String script = new String(Files.readAllBytes(Paths.get(SETUP_FILE)), StandardCharsets.UTF_8)
+                .replaceAll("--[^\\r\\n]*", "");
+        for (String statement : script.split(";")) {
+            String sql = statement.trim();
+            if (sql.matches("(?is)CREATE\\s+TABLE\\s+IF\\s+NOT\\s+EXISTS\\s+(DEPT|EMP)\\b.*")) {
+                db.executeUpdateOrDelete(sql.replaceAll("\\bDEPT\\b", DEPT_TABLE).replaceAll("\\bEMP\\b", EMP_TABLE));
+            }
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Path deptFile = Files.createTempFile("bench-dept", ".csv");
+        Path empFile = Files.createTempFile("bench-emp", ".csv");
+        try {
+            try (Writer out = Files.newBufferedWriter(deptFile, StandardCharsets.UTF_8)) {
+                Csv.writeRow(out, new String[]{"DEPTNO", "DNAME", "LOC"});
+                for (int d = 1; d <= depts; d++) {
+                    Csv.writeRow(out, new String[]{String.valueOf(d * 10), "DEPT" + d, "LOC" + random.nextInt(100)});
+                }
+            }
+            try (Writer out = Files.newBufferedWriter(empFile, StandardCharsets.UTF_8)) {
+                Csv.writeRow(out, new String[]{"EMPNO", "ENAME", "JOB", "MGR", "HIREDATE", "SAL", "COMM", "DEPTNO"});
+                for (int e = 1; e <= rows; e++) {
+                    Csv.writeRow(out, employee(e, random));
+                }
+            }
+            db.importCsv(DEPT_TABLE, deptFile, null);
+            CsvImporter.Result result = db.importCsv(EMP_TABLE, empFile, null);
+            if (result.rejected > 0) {
+                throw new SQLException(result.rejected + " seed row(s) rejected; see " + result.errorFile);
+            }
+        } finally {
+            Files.deleteIfExists(deptFile);
+            Files.deleteIfExists(empFile);
+        }
+        nextEmpno.set(rows + 1L);
+    }
+
+    // MGR stays NULL so that deleting any employee never trips the self-referencing foreign key.
+    private String[] employee(long empno, ThreadLocalRandom random) {
+        return new String[]{
+                String.valueOf(empno),
+                "E" + empno, // ENAME is VARCHAR(10) UNIQUE
+                JOBS[random.nextInt(JOBS.length)],
+                null,
+                LocalDate.of(1980, 1, 1).plusDays(random.nextInt(15_000)).toString(),
+                String.valueOf(800 + random.nextInt(5000)),
+                random.nextInt(4) == 0 ? String.valueOf(random.nextInt(1500)) : null,
+                String.valueOf((1 + random.nextInt(depts)) * 10)
+        };
+    }
+
+    private Map<String, OperationStats> run(int threads, int seconds, int[] weights) {
+        Map<String, OperationStats> stats = new LinkedHashMap<>();
+        for (String operation : OPERATIONS) {
+            stats.put(operation, new OperationStats());
+        }
+        int totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        final int weightSum = totalWeight;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int pick = random.nextInt(weightSum);
+                    int op = 0;
+                    while (pick >= weights[op]) {
+                        pick -= weights[op++];
+                    }
+                    OperationStats opStats = stats.get(OPERATIONS[op]);
+                    long start = System.nanoTime();
+                    try {
+                        execute(op, random);
+                        opStats.latency.recordNanos(System.nanoTime() - start);
+                    } catch (SQLException | RuntimeException e) {
+                        opStats.errors.increment();
+                        opStats.lastError = e.getMessage();
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return stats;
+    }
+
+    private void execute(int op, ThreadLocalRandom random) throws SQLException {
+        switch (OPERATIONS[op]) {
+            case "read":
+                db.getTableData(EMP_TABLE).close();
+                break;
+            case "insert": {
+                String[] values = employee(nextEmpno.getAndIncrement(), random);
+                String[] columns = {"EMPNO", "ENAME", "JOB", "MGR", "HIREDATE", "SAL", "COMM", "DEPTNO"};
+                Map<String, String> row = new LinkedHashMap<>();
+                for (int i = 0; i < columns.length; i++) {
+                    row.put(columns[i], values[i]);
+                }
+                db.insertRow(EMP_TABLE, row);
+                insertedKeys.add(values[0]);
+                break;
+            }
+            case "update":
+                db.updateCellValue(EMP_TABLE, "SAL", String.valueOf(800 + random.nextInt(5000)), "EMPNO",
+                        String.valueOf(1 + random.nextLong(nextEmpno.get() - 1)));
+                break;
+            case "delete": {
+                List<String> keys = new ArrayList<>(deleteBatch);
+                String key;
+                while (keys.size() < deleteBatch && (key = insertedKeys.poll()) != null) {
+                    keys.add(key);
+                }
+                while (keys.size() < deleteBatch) {
+                    keys.add(String.valueOf(1 + random.nextLong(nextEmpno.get() - 1))); // may already be gone
+                }
+                db.deleteMultipleRows(EMP_TABLE, "EMPNO", keys);
+                break;
+            }
+            case "query":
+                db.executeGenericQuery("SELECT d.DNAME, COUNT(*), AVG(e.SAL) FROM " + EMP_TABLE + " e JOIN " + DEPT_TABLE
+                        + " d ON d.DEPTNO = e.DEPTNO WHERE e.SAL > " + (800 + random.nextInt(5000)) + " GROUP BY d.DNAME").close();
+                break;
+            default:
+                throw new IllegalStateException(OPERATIONS[op]);
+        }
+    }
+
+    private void dropTables() {
+        try {
+            db.executeUpdateOrDelete("DROP TABLE IF EXISTS " + EMP_TABLE);
+            db.executeUpdateOrDelete("DROP TABLE IF EXISTS " + DEPT_TABLE);
+        } catch (SQLException e) {
+            System.err.println("Could not drop benchmark tables: " + e.getMessage());
+        }
+    }
+
+    private static String report(Map<String, OperationStats> results, double elapsedSeconds) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%n%-8s %10s %10s %10s %10s %10s %10s %8s%n",
+                "op", "count", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors"));
+        long total = 0;
+        long errors = 0;
+        for (Map.Entry<String, OperationStats> entry : results.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            long failed = entry.getValue().errors.sum();
+            if (latency.count() == 0 && failed == 0) continue;
+            out.append(String.format("%-8s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n", entry.getKey(), latency.count(),
+                    latency.count() / elapsedSeconds, latency.percentileMillis(50), latency.percentileMillis(99),
+                    latency.percentileMillis(99.9), latency.maxMillis(), failed));
+            total += latency.count();
+            errors += failed;
+        }
+        out.append(String.format("%-8s %10d %10.1f%n", "total", total, total / elapsedSeconds));
+        for (Map.Entry<String, OperationStats> entry : results.entrySet()) {
+            if (entry.getValue().lastError != null) {
+                out.append("Last ").append(entry.getKey()).append(" error: ").append(entry.getValue().lastError).append('\n');
+            }
+        }
+        if (errors > 0) {
+            out.append(errors).append(" operation(s) failed and are not in the latencies.\n");
+        }
+        return out.toString();
+    }
+
+    // One line per operation, so runs can be compared over time.
+    private static void appendCsv(Path file, Map<String, OperationStats> results, double elapsedSeconds, int threads) throws IOException {
+        boolean newFile = !Files.exists(file);
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+            if (newFile) {
+                out.println("timestamp,threads,op,count,ops_per_second,p50_ms,p99_ms,p999_ms,max_ms,errors");
+            }
+            String timestamp = LocalDateTime.now().withNano(0).toString();
+            for (Map.Entry<String, OperationStats> entry : results.entrySet()) {
+                LatencyHistogram latency = entry.getValue().latency;
+                out.printf("%s,%d,%s,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%d%n", timestamp, threads, entry.getKey(), latency.count(),
+                        latency.count() / elapsedSeconds, latency.percentileMillis(50), latency.percentileMillis(99),
+                        latency.percentileMillis(99.9), latency.maxMillis(), entry.getValue().errors.sum());
+            }
+        }
+    }
+
+    // --name=value, or --name alone for flags.
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "" : arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        int parsed = value == null ? defaultValue : Integer.parseInt(value);
+        if (parsed < 0 || (parsed == 0 && !name.equals("warmup"))) {
+            throw new IllegalArgumentException("--" + name + " must be positive");
+        }
+        return parsed;
+    }
+
+    // "read:5,insert:30" -> weights in OPERATIONS order; operations not listed get 0.
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[OPERATIONS.length];
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            int index = List.of(OPERATIONS).indexOf(nameAndWeight[0].trim().toLowerCase());
+            if (index < 0 || nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry '" + part + "'; use e.g. read:5,insert:30,update:40,delete:15,query:10");
+            }
+            weights[index] = Integer.parseInt(nameAndWeight[1].trim());
+        }
+        int total = 0;
+        for (int weight : weights) {
+            if (weight < 0) throw new IllegalArgumentException("Mix weights cannot be negative");
+            total += weight;
+        }
+        if (total == 0) throw new IllegalArgumentException("The mix must give at least one operation a weight");
+        return weights;
+    }
+
+    private static String describeMix(int[] weights) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            if (weights[i] == 0) continue;
+            if (out.length() > 0) out.append(',');
+            out.append(OPERATIONS[i]).append(':').append(weights[i]);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,106 @@
+import javafx.animation.AnimationTimer;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.ListView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Log panel for FxDb. Messages may be appended from any thread; they are queued and
+ * drained once per JavaFX pulse into a fixed-size ring buffer shown in a virtualized ListView,
+ * so heavy logging costs one list change per frame instead of a full text re-layout per line.
+ */
+class LogConsole {
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+    private final RingBufferList lines;
+    private final ListView<String> view;
+    private final AnimationTimer drainer;
+
+    LogConsole(int maxLines) {
+        this.lines = new RingBufferList(maxLines);
+        this.view = new ListView<>(lines);
+        this.drainer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                drain();
+            }
+        };
+        drainer.start();
+    }
+
+    ListView<String> getView() {
+        return view;
+    }
+
+    void append(String message) {
+        for (String line : message.split("\n", -1)) {
+            pending.add(line);
+        }
+    }
+
+    void stop() {
+        drainer.stop();
+    }
+
+    private void drain() {
+        if (pending.isEmpty()) return;
+        List<String> batch = new ArrayList<>();
+        String line;
+        while ((line = pending.poll()) != null) {
+            batch.add(line);
+        }
+        lines.appendAll(batch);
+        view.scrollTo(lines.size() - 1);
+    }
+
+    // Observable list over a circular array: appends past capacity drop the oldest lines.
+    private static class RingBufferList extends ObservableListBase<String> {
+        private final String[] buffer;
+        private int head;
+        private int size;
+
+        RingBufferList(int capacity) {
+            this.buffer = new String[capacity];
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Line " + index + " out of " + size);
+            return buffer[(head + index) % buffer.length];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        void appendAll(List<String> batch) {
+            if (batch.size() > buffer.length) {
+                batch = batch.subList(batch.size() - buffer.length, batch.size());
+            }
+            beginChange();
+            try {
+                int overflow = size + batch.size() - buffer.length;
+                if (overflow > 0) {
+                    List<String> removed = new ArrayList<>(overflow);
+                    for (int i = 0; i < overflow; i++) {
+                        removed.add(buffer[head]);
+                        buffer[head] = null;
+                        head = (head + 1) % buffer.length;
+                    }
+                    size -= overflow;
+                    nextRemove(0, removed);
+                }
+                int from = size;
+                for (String line : batch) {
+                    buffer[(head + size) % buffer.length] = line;
+                    size++;
+                }
+                nextAdd(from, size);
+            } finally {
+                endChange();
+            }
+        }
+    }
+}
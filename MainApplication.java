@@ -1,11 +1,20 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Scanner;
-import javafx.application.Application;
+import javax.management.JMException;
+import com.sun.net.httpserver.HttpServer;
 
 public class MainApplication {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer();
+            return;
+        }
         // Use a single Scanner for the entire application to avoid issues with System.in
         Scanner scanner = new Scanner(System.in);
         boolean keepRunning = true;
+        HttpServer metricsServer = startMetrics();
 
         while (keepRunning) {
             System.out.println("\n========= UNIFIED MAIN MENU =========");
@@ -25,16 +34,15 @@ public class MainApplication {
             switch (choice) {
                 case "1":
                     System.out.println("Launching GUI Database Manager...");
-                    // Note: You can only launch a JavaFX application once per JVM run.
-                    // Subsequent calls will throw an IllegalStateException.
+                    // The toolkit and the database pool stay up between visits, so reopening is quick.
                     try {
-                        // Launching in a new thread to avoid blocking the main menu
-                        // in case the GUI needs to run concurrently.
-                        // However, for this simple case, the direct launch is what you had.
-                        Application.launch(FxDb.class, args);
-                    } catch (IllegalStateException e) {
-                        System.err.println("Error: JavaFX application can only be launched once.");
-                        System.err.println("Please restart the main application to launch the GUI again.");
+                        GuiHost.showAndWait();
+                        System.out.println("--- All GUI windows closed, returning to Main Menu ---");
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        keepRunning = false;
+                    } catch (RuntimeException e) {
+                        System.err.println("Could not open the GUI: " + e.getMessage());
                     }
                     break;
                 case "2":
@@ -61,5 +69,62 @@ public class MainApplication {
         
         // Close the scanner only when the application is truly finished.
         scanner.close();
+        GuiHost.shutdown();
+        if (metricsServer != null) {
+            metricsServer.stop(0);
+        }
+    }
+
+    // Headless mode: serves the calculator and database over HTTP on 127.0.0.1 (-Dfxdb.apiPort, default 8088)
+    // until the process is stopped. Every client shares this JVM's connection pool and caches.
+    private static void runServer() {
+        HttpServer metricsServer = startMetrics();
+        DatabaseHelper dbHelper = new DatabaseHelper();
+        int port = Integer.getInteger("fxdb.apiPort", 8088);
+        Path tokenFile = Paths.get(System.getProperty("fxdb.apiTokenFile",
+                Paths.get(System.getProperty("user.home"), ".fxdb", "api-token").toString()));
+        ApiServer apiServer;
+        try {
+            apiServer = new ApiServer(dbHelper, port, tokenFile);
+        } catch (IOException e) {
+            System.err.println("Could not start API server on port " + port + ": " + e.getMessage());
+            dbHelper.close();
+            if (metricsServer != null) metricsServer.stop(0);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            apiServer.close();
+            dbHelper.close();
+            if (metricsServer != null) metricsServer.stop(0);
+        }, "api-shutdown"));
+        apiServer.start();
+        System.out.println("API server listening on http://127.0.0.1:" + apiServer.getPort() + "/ (Ctrl+C to stop)");
+        System.out.println("Bearer token for this run written to " + apiServer.getTokenFile());
+    }
+
+    // Metrics are always published over JMX; -Dfxdb.metricsPort=9464 also serves them at http://127.0.0.1:9464/metrics.
+    // Starting the platform MBean server takes a noticeable part of startup, so it happens in the background.
+    private static HttpServer startMetrics() {
+        Thread jmx = new Thread(() -> {
+            try {
+                MetricsRegistry.DEFAULT.registerMBean();
+            } catch (JMException e) {
+                System.err.println("Could not register metrics MBean: " + e.getMessage());
+            }
+        }, "metrics-jmx");
+        jmx.setDaemon(true);
+        jmx.start();
+        Integer port = Integer.getInteger("fxdb.metricsPort");
+        if (port == null) {
+            return null;
+        }
+        try {
+            HttpServer server = MetricsRegistry.DEFAULT.startHttpServer(port);
+            System.out.println("Metrics available at http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+            return server;
+        } catch (IOException e) {
+            System.err.println("Could not start metrics endpoint on port " + port + ": " + e.getMessage());
+            return null;
+        }
     }
 }
\ No newline at end of file
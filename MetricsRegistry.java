@@ -0,0 +1,280 @@
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Application-wide performance counters. Components register counters, gauges or whole metric families once;
+ * the current values are read on demand and published both as attributes of the JMX bean {@value #OBJECT_NAME}
+ * and, when started, in Prometheus text format on a loopback-only HTTP endpoint (/metrics).
+ * Each family belongs to the component that registered it, which unregisters when it is closed.
+ */
+class MetricsRegistry implements DynamicMBean {
+    static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    static final String OBJECT_NAME = "fxdb:type=Metrics";
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>(); // what is reported
+    private final Map<String, List<Family>> registered = new HashMap<>(); // every live owner's family, oldest first
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    // Fills samples keyed by what follows the family name, e.g. "" or "{statement=\"SELECT EMP\",quantile=\"0.5\"}".
+    interface Collector {
+        void collect(Map<String, Double> samples);
+    }
+
+    private static class Family {
+        final Object owner;
+        final String help;
+        final String type;
+        final Collector collector;
+
+        Family(Object owner, String help, String type, Collector collector) {
+            this.owner = owner;
+            this.help = help;
+            this.type = type;
+            this.collector = collector;
+        }
+    }
+
+    // Monotonic count that also knows its average rate over the last minute.
+    static class Counter {
+        private static final int WINDOW_SECONDS = 60;
+        private final LongAdder total = new LongAdder();
+        private final AtomicLongArray perSecond = new AtomicLongArray(WINDOW_SECONDS);
+        private final AtomicLongArray stamps = new AtomicLongArray(WINDOW_SECONDS);
+
+        void increment() {
+            total.increment();
+            long second = System.currentTimeMillis() / 1000;
+            int slot = (int) (second % WINDOW_SECONDS);
+            long stamp = stamps.get(slot);
+            if (stamp != second && stamps.compareAndSet(slot, stamp, second)) {
+                perSecond.set(slot, 0);
+            }
+            perSecond.incrementAndGet(slot);
+        }
+
+        long sum() {
+            return total.sum();
+        }
+
+        double ratePerSecond() {
+            long now = System.currentTimeMillis() / 1000;
+            long events = 0;
+            for (int slot = 0; slot < WINDOW_SECONDS; slot++) {
+                long age = now - stamps.get(slot);
+                if (age > 0 && age <= WINDOW_SECONDS) events += perSecond.get(slot); // the current second is still filling
+            }
+            return (double) events / WINDOW_SECONDS;
+        }
+    }
+
+    Counter counter(String name, String help) {
+        return counters.computeIfAbsent(name, key -> {
+            Counter counter = new Counter();
+            register(key, help, "counter", samples -> samples.put("", (double) counter.sum()));
+            return counter;
+        });
+    }
+
+    // Process-wide gauge that is never unregistered.
+    void gauge(String name, String help, DoubleSupplier value) {
+        gauge(this, name, help, value);
+    }
+
+    void gauge(Object owner, String name, String help, DoubleSupplier value) {
+        register(owner, name, help, "gauge", samples -> samples.put("", value.getAsDouble()));
+    }
+
+    // Process-wide family that is never unregistered.
+    void register(String name, String help, String type, Collector collector) {
+        register(this, name, help, type, collector);
+    }
+
+    // An owner registering a name again replaces its own family. When two live owners register the same name
+    // (the console's and the GUI's QueryStats, say), the newer one is reported until it is unregistered,
+    // after which the older one is reported again; values of different owners are never mixed.
+    void register(Object owner, String name, String help, String type, Collector collector) {
+        Family family = new Family(owner, help, type, collector);
+        synchronized (registered) {
+            List<Family> owners = registered.computeIfAbsent(name, key -> new ArrayList<>());
+            owners.removeIf(existing -> existing.owner == owner);
+            owners.add(family);
+            families.put(name, family);
+        }
+    }
+
+    // Drops every family of a component that is going away.
+    void unregister(Object owner) {
+        synchronized (registered) {
+            for (Iterator<Map.Entry<String, List<Family>>> it = registered.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, List<Family>> entry = it.next();
+                List<Family> owners = entry.getValue();
+                if (!owners.removeIf(existing -> existing.owner == owner)) continue;
+                if (owners.isEmpty()) {
+                    it.remove();
+                    families.remove(entry.getKey());
+                } else {
+                    families.put(entry.getKey(), owners.get(owners.size() - 1));
+                }
+            }
+        }
+    }
+
+    static String labels(String... namesAndValues) {
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (i > 0) out.append(',');
+            String value = namesAndValues[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+            out.append(namesAndValues[i]).append("=\"").append(value).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    // Prometheus text exposition format 0.0.4.
+    String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            Family family = entry.getValue();
+            out.append("# HELP ").append(entry.getKey()).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(entry.getKey()).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Double> sample : collect(family).entrySet()) {
+                out.append(entry.getKey()).append(sample.getKey()).append(' ').append(format(sample.getValue())).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    // Every sample as "name{labels}" -> value; these are also the JMX attribute names.
+    Map<String, Double> snapshot() {
+        Map<String, Double> flat = new LinkedHashMap<>();
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            for (Map.Entry<String, Double> sample : collect(entry.getValue()).entrySet()) {
+                flat.put(entry.getKey() + sample.getKey(), sample.getValue());
+            }
+        }
+        return flat;
+    }
+
+    void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+        }
+    }
+
+    // Binds to the loopback interface only; stop the returned server before exiting.
+    HttpServer startHttpServer(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        return server;
+    }
+
+    private static Map<String, Double> collect(Family family) {
+        Map<String, Double> samples = new LinkedHashMap<>();
+        try {
+            family.collector.collect(samples);
+        } catch (RuntimeException e) {
+            // A failing component must not break the whole scrape.
+        }
+        return samples;
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Double value = snapshot().get(attribute);
+        if (value == null) throw new AttributeNotFoundException(attribute);
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Double> values = snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Double value = values.get(attribute);
+            if (value != null) list.add(new Attribute(attribute, value));
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "No operations on " + OBJECT_NAME);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Double> values = snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+        int i = 0;
+        for (String name : values.keySet()) {
+            String family = name.contains("{") ? name.substring(0, name.indexOf('{')) : name;
+            Family info = families.get(family.replaceAll("_(count|sum)$", ""));
+            String description = info != null ? info.help : family;
+            attributes[i++] = new MBeanAttributeInfo(name, Double.class.getName(), description, true, false, false);
+        }
+        return new MBeanInfo(MetricsRegistry.class.getName(), "Application performance counters", attributes, null, null, null);
+    }
+}
@@ -0,0 +1,176 @@
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Row store that keeps fetched query results outside the Java heap.
+ * Rows are encoded into fixed-size direct buffers (length-prefixed UTF-8 cells)
+ * and decoded on demand, so the grid still gets random access by row index. Closing frees the buffers
+ * at once; no row may be read afterwards.
+ */
+class OffHeapRowStore implements AutoCloseable {
+    static final int CHUNK_SIZE = 1 << 20; // 1 MB per direct buffer
+    private static final int NULL_LENGTH = -1;
+    private static final int RECENT_ROWS = 256; // more than a screenful of grid rows
+
+    // Java 17 has no public way to free a direct buffer, but sun.misc.Unsafe.invokeCleaner (jdk.unsupported)
+    // does it. Like ConsoleInterrupt's signal handling it is looked up reflectively and fails soft: without it,
+    // closed chunks are simply dropped and freed when the collector gets to them.
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeType = Class.forName("sun.misc.Unsafe");
+            Field instance = unsafeType.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            unsafe = instance.get(null);
+            invokeCleaner = unsafeType.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final int columnCount;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long[] rowOffsets = new long[1024]; // (chunk index << 32) | position in chunk
+    private int rowCount;
+    private long bytesUsed;
+    private boolean closed;
+    // The grid asks for the same visible rows over and over; decoded rows are kept by index, one per slot.
+    @SuppressWarnings("unchecked")
+    private final ObservableList<String>[] recentRows = new ObservableList[RECENT_ROWS];
+    private final int[] recentIndexes = new int[RECENT_ROWS];
+
+    OffHeapRowStore(int columnCount) {
+        this.columnCount = columnCount;
+    }
+
+    void append(List<String> row) {
+        ensureOpen();
+        byte[][] encoded = new byte[columnCount][];
+        int size = 0;
+        for (int i = 0; i < columnCount; i++) {
+            String value = row.get(i);
+            encoded[i] = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + (encoded[i] == null ? 0 : encoded[i].length);
+        }
+
+        ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.remaining() < size) {
+            chunk = acquireChunk(size);
+            chunks.add(chunk);
+        }
+        if (rowCount == rowOffsets.length) {
+            rowOffsets = Arrays.copyOf(rowOffsets, rowOffsets.length * 2);
+        }
+        rowOffsets[rowCount++] = ((long) (chunks.size() - 1) << 32) | chunk.position();
+        for (byte[] cell : encoded) {
+            if (cell == null) {
+                chunk.putInt(NULL_LENGTH);
+            } else {
+                chunk.putInt(cell.length);
+                chunk.put(cell);
+            }
+        }
+        bytesUsed += size;
+    }
+
+    ObservableList<String> getRow(int index) {
+        ensureOpen();
+        if (index < 0 || index >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + index + " out of " + rowCount);
+        }
+        int slot = index % RECENT_ROWS;
+        if (recentRows[slot] != null && recentIndexes[slot] == index) {
+            return recentRows[slot];
+        }
+        ByteBuffer chunk = chunks.get((int) (rowOffsets[index] >>> 32));
+        int pos = (int) rowOffsets[index];
+        String[] cells = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            int length = chunk.getInt(pos);
+            pos += Integer.BYTES;
+            if (length != NULL_LENGTH) {
+                byte[] bytes = new byte[length];
+                chunk.get(pos, bytes);
+                cells[i] = new String(bytes, StandardCharsets.UTF_8);
+                pos += length;
+            }
+        }
+        ObservableList<String> row = FXCollections.observableArrayList(cells);
+        recentRows[slot] = row;
+        recentIndexes[slot] = index;
+        return row;
+    }
+
+    int size() {
+        return rowCount;
+    }
+
+    long bytesUsed() {
+        return bytesUsed;
+    }
+
+    // Read-only random-access view used as the backing list of the grid.
+    List<ObservableList<String>> asList() {
+        return new RowView();
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (ByteBuffer chunk : chunks) {
+            free(chunk);
+        }
+        chunks.clear();
+        Arrays.fill(recentRows, null);
+        rowOffsets = new long[0];
+        rowCount = 0;
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("Result store has already been closed.");
+    }
+
+    // A single row larger than a chunk gets a buffer of its own size.
+    private static ByteBuffer acquireChunk(int minSize) {
+        return ByteBuffer.allocateDirect(Math.max(minSize, CHUNK_SIZE));
+    }
+
+    private static void free(ByteBuffer chunk) {
+        if (INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, chunk);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the collector
+        }
+    }
+
+    private class RowView extends AbstractList<ObservableList<String>> implements RandomAccess {
+        @Override
+        public ObservableList<String> get(int index) {
+            return getRow(index);
+        }
+
+        @Override
+        public int size() {
+            return closed ? 0 : rowCount;
+        }
+    }
+}
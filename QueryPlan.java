@@ -0,0 +1,136 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed MySQL execution plan. Built from EXPLAIN FORMAT=TREE / EXPLAIN ANALYZE output, where every
+ * operator is a "-> " line indented four spaces per level, or from classic tabular EXPLAIN rows on
+ * servers older than 8.0.16. Full table scans are flagged, and flagged as warnings on large tables.
+ */
+class QueryPlan {
+    static final long LARGE_TABLE_ROWS = Long.getLong("fxdb.largeTableRows", 10_000);
+
+    private static final Pattern COST = Pattern.compile("\\(cost=([\\d.e+]+)(?:\\.\\.[\\d.e+]+)?\\s+rows=([\\d.e+]+)\\)");
+    private static final Pattern ACTUAL = Pattern.compile("\\((actual time=[^)]*)\\)");
+    private static final Pattern TABLE_SCAN = Pattern.compile("^Table scan on (\\w+)");
+    private static final Pattern SORT = Pattern.compile("^Sort\\b");
+
+    final Node root;
+    final List<String> warnings = new ArrayList<>();
+    final List<String> scannedTables = new ArrayList<>(); // tables read by a full scan
+    boolean sorts;                                         // the plan sorts rows instead of reading an index in order
+    final List<String> suggestions = new ArrayList<>();    // CREATE INDEX statements, filled in by IndexAdvisor
+
+    static class Node {
+        final String label;
+        final Double cost;          // optimizer cost, null when not reported
+        final Long estimatedRows;   // null when not reported
+        final String actual;        // EXPLAIN ANALYZE timing, null otherwise
+        final List<Node> children = new ArrayList<>();
+        boolean fullScan;
+
+        Node(String label, Double cost, Long estimatedRows, String actual) {
+            this.label = label;
+            this.cost = cost;
+            this.estimatedRows = estimatedRows;
+            this.actual = actual;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            if (fullScan) text.append("[FULL SCAN] ");
+            text.append(label);
+            if (estimatedRows != null) text.append("  ~").append(estimatedRows).append(" rows");
+            if (cost != null) text.append(String.format(", cost %.2f", cost));
+            if (actual != null) text.append("  (").append(actual).append(')');
+            return text.toString();
+        }
+    }
+
+    private QueryPlan(Node root) {
+        this.root = root;
+    }
+
+    static QueryPlan fromTree(String text) {
+        QueryPlan plan = new QueryPlan(new Node("Query plan", null, null, null));
+        Deque<Node> parents = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        parents.push(plan.root);
+        depths.push(-1);
+        for (String line : text.split("\\R")) {
+            int arrow = line.indexOf("-> ");
+            if (arrow < 0) continue;
+            int depth = arrow / 4;
+            String body = line.substring(arrow + 3).trim();
+            Matcher cost = COST.matcher(body);
+            Double costValue = null;
+            Long rows = null;
+            if (cost.find()) {
+                costValue = Double.parseDouble(cost.group(1));
+                rows = (long) Double.parseDouble(cost.group(2));
+            }
+            Matcher actual = ACTUAL.matcher(body);
+            String actualText = actual.find() ? actual.group(1) : null;
+            String label = body.replaceAll("\\s*\\((?:cost|actual time)=[^)]*\\)", "").trim();
+            Node node = new Node(label, costValue, rows, actualText);
+            plan.inspect(node, TABLE_SCAN.matcher(label), SORT.matcher(label).find());
+
+            while (depths.peek() >= depth) {
+                depths.pop();
+                parents.pop();
+            }
+            parents.peek().children.add(node);
+            parents.push(node);
+            depths.push(depth);
+        }
+        return plan;
+    }
+
+    // Other engines' plan text, one node per line; nothing is flagged, so no indexes are suggested.
+    static QueryPlan fromText(String text) {
+        QueryPlan plan = new QueryPlan(new Node("Query plan", null, null, null));
+        for (String line : text.split("\\R")) {
+            if (!line.isBlank()) plan.root.children.add(new Node(line.strip(), null, null, null));
+        }
+        return plan;
+    }
+
+    // Classic EXPLAIN: one row per table access, no nesting.
+    static QueryPlan fromTable(ResultSet rs) throws SQLException {
+        QueryPlan plan = new QueryPlan(new Node("Query plan", null, null, null));
+        while (rs.next()) {
+            String table = rs.getString("table");
+            String type = rs.getString("type");
+            String key = rs.getString("key");
+            String extra = rs.getString("Extra");
+            long rows = rs.getLong("rows");
+            String label = (table == null ? "(no table)" : table) + ": access " + type
+                    + (key != null ? " via " + key : "") + (extra != null ? ", " + extra : "");
+            Node node = new Node(label, null, rs.wasNull() ? null : rows, null);
+            plan.inspect(node, TABLE_SCAN.matcher("ALL".equals(type) && table != null ? "Table scan on " + table : ""),
+                    extra != null && extra.contains("Using filesort"));
+            plan.root.children.add(node);
+        }
+        return plan;
+    }
+
+    private void inspect(Node node, Matcher tableScan, boolean sort) {
+        if (tableScan.find()) {
+            node.fullScan = true;
+            String table = tableScan.group(1);
+            if (!scannedTables.contains(table)) scannedTables.add(table);
+            if (node.estimatedRows != null && node.estimatedRows >= LARGE_TABLE_ROWS) {
+                warnings.add("Full scan of '" + table + "' reads about " + node.estimatedRows + " rows.");
+            }
+        }
+        if (sort) {
+            sorts = true;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cold publisher of a query's rows in batches. Each subscription runs the query on its own pooled
+ * connection as a forward-only stream and reads the next batch only once the subscriber has asked for it,
+ * so a slow consumer holds the server back instead of filling the heap.
+ */
+class QueryPublisher implements Flow.Publisher<QueryPublisher.RowBatch> {
+    // How long a subscriber may hold an open stream without asking for more before it is closed.
+    private static final int IDLE_TIMEOUT_SECONDS = Integer.getInteger("fxdb.streamIdleTimeoutSeconds", 300);
+
+    private final ConnectionPool pool;
+    private final String sql;
+    private final int batchSize;
+    private final Executor executor;
+
+    static class RowBatch {
+        final List<String> headers;
+        final List<List<String>> rows;
+        final long firstRow; // zero-based position of rows.get(0) in the whole result
+
+        RowBatch(List<String> headers, List<List<String>> rows, long firstRow) {
+            this.headers = headers;
+            this.rows = rows;
+            this.firstRow = firstRow;
+        }
+    }
+
+    QueryPublisher(ConnectionPool pool, String sql, int batchSize, Executor executor) {
+        this.pool = pool;
+        this.sql = sql;
+        this.batchSize = batchSize;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super RowBatch> subscriber) {
+        RowSubscription subscription = new RowSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        executor.execute(subscription::run);
+    }
+
+    private class RowSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super RowBatch> subscriber;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition demandChanged = lock.newCondition();
+        private long demand;
+        private boolean cancelled;
+        private Statement statement;
+        private ConnectionPool.PooledConnection connection; // the one running statement
+
+        RowSubscription(Flow.Subscriber<? super RowBatch> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (n <= 0) {
+                    cancelled = true; // the spec turns a bad request into onError, sent by the reader
+                    demand = -1;
+                } else if (demand >= 0) {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                demandChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            Statement running;
+            ConnectionPool.PooledConnection runningOn;
+            lock.lock();
+            try {
+                cancelled = true;
+                running = statement;
+                runningOn = connection;
+                demandChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (running != null) {
+                runningOn.discardOnRelease(); // as in cancelRunningQueries, the kill may still be in flight
+                try {
+                    running.cancel(); // stops the server instead of draining the rest of the stream
+                } catch (SQLException ignored) {
+                    // The reader notices the cancellation either way.
+                }
+            }
+        }
+
+        void run() {
+            try (ConnectionPool.PooledConnection conn = pool.acquire();
+                 Statement stmt = conn.connection().createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(TableExporter.STREAMING_FETCH_SIZE);
+                if (!register(stmt, conn)) return;
+                try {
+                    // Makes the server refuse writes, e.g. a data-modifying WITH, that a text check can miss.
+                    conn.connection().setReadOnly(true);
+                    try (ResultSet rs = stmt.executeQuery(sql)) {
+                        ResultSetMetaData metaData = rs.getMetaData();
+                        int columnCount = metaData.getColumnCount();
+                        List<String> headers = new ArrayList<>(columnCount);
+                        for (int c = 1; c <= columnCount; c++) {
+                            headers.add(metaData.getColumnName(c));
+                        }
+                        headers = Collections.unmodifiableList(headers);
+                        // Reading one row ahead lets the last batch be followed by onComplete without waiting for more demand.
+                        boolean more = rs.next();
+                        long position = 0;
+                        do {
+                            if (!awaitDemand()) return;
+                            List<List<String>> rows = new ArrayList<>(more ? batchSize : 0);
+                            while (more && rows.size() < batchSize) {
+                                List<String> row = new ArrayList<>(columnCount);
+                                for (int c = 1; c <= columnCount; c++) {
+                                    row.add(rs.getString(c));
+                                }
+                                rows.add(row);
+                                more = rs.next();
+                            }
+                            subscriber.onNext(new RowBatch(headers, rows, position)); // an empty result still reports its headers
+                            position += rows.size();
+                        } while (more);
+                    }
+                } finally {
+                    resetReadOnly(conn);
+                }
+                if (!isCancelled()) subscriber.onComplete();
+            } catch (SQLException | RuntimeException e) {
+                if (!isCancelled()) subscriber.onError(e);
+            }
+        }
+
+        private void resetReadOnly(ConnectionPool.PooledConnection conn) {
+            try {
+                conn.connection().setReadOnly(false);
+            } catch (SQLException e) {
+                conn.discardOnRelease(); // never hand a read-only session to the next user
+            }
+        }
+
+        private boolean register(Statement stmt, ConnectionPool.PooledConnection conn) {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    failBadRequest();
+                    return false;
+                }
+                statement = stmt;
+                connection = conn;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Blocks the reader until the subscriber wants another batch; false once cancelled. Waiting longer than
+        // the idle timeout, or being interrupted (e.g. by shutdownNow), cancels the stream and reports onError.
+        private boolean awaitDemand() {
+            Exception failure = null;
+            lock.lock();
+            try {
+                long remaining = TimeUnit.SECONDS.toNanos(IDLE_TIMEOUT_SECONDS);
+                while (demand == 0 && !cancelled && failure == null) {
+                    if (remaining <= 0) {
+                        failure = new TimeoutException("No rows requested for " + IDLE_TIMEOUT_SECONDS + "s, stream closed");
+                        break;
+                    }
+                    try {
+                        remaining = demandChanged.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        failure = e;
+                    }
+                }
+                if (cancelled) {
+                    failBadRequest();
+                    return false;
+                }
+                if (failure == null) {
+                    if (demand != Long.MAX_VALUE) demand--;
+                    return true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            cancel();
+            subscriber.onError(failure);
+            return false;
+        }
+
+        private void failBadRequest() {
+            if (demand < 0) {
+                demand = 0;
+                subscriber.onError(new IllegalArgumentException("Subscription.request(n) needs n > 0"));
+            }
+        }
+
+        private boolean isCancelled() {
+            lock.lock();
+            try {
+                return cancelled;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
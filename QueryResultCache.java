@@ -0,0 +1,146 @@
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of table pages keyed by {@link DatabaseHelper.TableQuery}.
+ * Entries are immutable snapshots; every hit hands out fresh row lists because the grid edits rows in place.
+ * Writes bump a per-table generation, so a read that raced with a write never stores its stale result.
+ */
+class QueryResultCache {
+    private final long maxBytes;
+    private final LinkedHashMap<DatabaseHelper.TableQuery, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> generations = new HashMap<>();
+    private long globalGeneration;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    QueryResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized DatabaseHelper.TableData get(DatabaseHelper.TableQuery query) {
+        Entry entry = entries.get(query);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        ObservableList<ObservableList<String>> rows = FXCollections.observableArrayList();
+        for (String[] row : entry.rows) {
+            rows.add(FXCollections.observableArrayList(row));
+        }
+        DatabaseHelper.TableData data = new DatabaseHelper.TableData(new ArrayList<>(entry.headers), rows);
+        data.hasMoreRows = entry.hasMoreRows;
+        return data;
+    }
+
+    // Unlike get(), neither copies the page nor counts towards the hit ratio.
+    synchronized boolean contains(DatabaseHelper.TableQuery query) {
+        return entries.containsKey(query);
+    }
+
+    // Take this before running the query and pass it to put().
+    synchronized long generation(String tableName) {
+        return globalGeneration + generations.getOrDefault(tableName.toUpperCase(), 0L);
+    }
+
+    synchronized void put(DatabaseHelper.TableQuery query, DatabaseHelper.TableData data, long generationAtStart) {
+        if (generation(query.tableName) != generationAtStart) {
+            return; // the table was written while we were reading it
+        }
+        Entry entry = new Entry(data);
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(query, entry);
+        if (previous != null) bytes -= previous.bytes;
+        bytes += entry.bytes;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    synchronized void invalidateTable(String tableName) {
+        generations.merge(tableName.toUpperCase(), 1L, Long::sum);
+        Iterator<Map.Entry<DatabaseHelper.TableQuery, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<DatabaseHelper.TableQuery, Entry> e = it.next();
+            if (e.getKey().tableName.equalsIgnoreCase(tableName)) {
+                bytes -= e.getValue().bytes;
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        globalGeneration++;
+        invalidations += entries.size();
+        entries.clear();
+        bytes = 0;
+    }
+
+    void registerMetrics(MetricsRegistry registry) {
+        registry.gauge(this, "db_result_cache_hit_ratio", "Share of table page reads served from the result cache.",
+                () -> {
+                    synchronized (this) {
+                        return MetricsRegistry.ratio(hits, misses);
+                    }
+                });
+        registry.gauge(this, "db_result_cache_bytes", "Estimated heap held by cached pages.", () -> {
+            synchronized (this) {
+                return bytes;
+            }
+        });
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized String stats() {
+        long total = hits + misses;
+        return String.format("Result cache: %d/%d hits (%.1f%%), %d entries, %d KB, %d evicted, %d invalidated",
+                hits, total, total == 0 ? 0.0 : 100.0 * hits / total, entries.size(), bytes / 1024, evictions, invalidations);
+    }
+
+    private static class Entry {
+        final List<String> headers;
+        final List<String[]> rows;
+        final boolean hasMoreRows;
+        final long bytes;
+
+        Entry(DatabaseHelper.TableData data) {
+            this.headers = new ArrayList<>(data.headers);
+            this.rows = new ArrayList<>(data.rows.size());
+            this.hasMoreRows = data.hasMoreRows;
+            long size = 64;
+            for (ObservableList<String> row : data.rows) {
+                String[] copy = row.toArray(new String[0]);
+                rows.add(copy);
+                size += 16 + 8L * copy.length;
+                for (String value : copy) {
+                    if (value != null) size += 40 + 2L * value.length();
+                }
+            }
+            this.bytes = size;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Query instrumentation. {@link #instrument} wraps a JDBC connection so that every statement it creates
+ * times its execute calls and every result set times its next() calls and counts rows and returned bytes.
+ * Timings are kept per statement type and table ("SELECT EMP") in latency histograms, and statements whose
+ * execute + fetch time reaches the slow-query threshold are appended to the slow-query log by a background
+ * writer. Scripts that return several results are timed and recorded per result.
+ */
+class QueryStats {
+    private static final Pattern STATEMENT_TARGET = Pattern.compile(
+            "^\\s*(\\w+)\\b(?:(?<=UPDATE)|.*?\\b(?:FROM|INTO|TABLE(?:\\s+IF\\s+(?:NOT\\s+)?EXISTS)?))\\s+`?(\\w+)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern FIRST_WORD = Pattern.compile("^\\s*(\\w+)");
+    private static final int SLOW_LOG_QUEUE_SIZE = 1024;
+
+    private final Path slowLogFile;
+    private volatile long slowThresholdNanos;
+    private volatile Map<String, Metrics> byStatement = new ConcurrentHashMap<>();
+    private volatile LatencyHistogram acquireLatency = new LatencyHistogram();
+    private final LongAdder slowQueries = new LongAdder();
+    // Queries never wait on the disk; when the writer falls this far behind, further lines are dropped.
+    private final ThreadPoolExecutor slowLogWriter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(SLOW_LOG_QUEUE_SIZE), runnable -> {
+        Thread thread = new Thread(runnable, "slow-query-log");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardPolicy());
+
+    static class Metrics {
+        final LongAdder rows = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LatencyHistogram execute = new LatencyHistogram();
+        final LatencyHistogram fetch = new LatencyHistogram();
+        final LatencyHistogram total = new LatencyHistogram();
+    }
+
+    QueryStats(Path slowLogFile, long slowThresholdMillis) {
+        this.slowLogFile = slowLogFile;
+        setSlowThresholdMillis(slowThresholdMillis);
+    }
+
+    Connection instrument(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(QueryStats.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    void recordAcquire(long nanos) {
+        acquireLatency.recordNanos(nanos);
+    }
+
+    long getSlowThresholdMillis() {
+        return slowThresholdNanos / 1_000_000;
+    }
+
+    void setSlowThresholdMillis(long millis) {
+        this.slowThresholdNanos = Math.max(0, millis) * 1_000_000;
+    }
+
+    void reset() {
+        byStatement = new ConcurrentHashMap<>();
+        acquireLatency = new LatencyHistogram();
+        slowQueries.reset();
+    }
+
+    String report() {
+        StringBuilder out = new StringBuilder();
+        LatencyHistogram acquire = acquireLatency;
+        out.append(String.format("Connection acquire: %d calls, p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                acquire.count(), acquire.percentileMillis(50), acquire.percentileMillis(99), acquire.maxMillis()));
+        out.append(String.format("Slow queries (>= %d ms): %d, logged to %s%n%n", getSlowThresholdMillis(), slowQueries.sum(), slowLogFile));
+        out.append("Latencies in ms; P50 to MAX cover execute + fetch.\n");
+        out.append(String.format("%-28s %8s %10s %10s %9s %9s %9s %9s %9s%n",
+                "STATEMENT", "COUNT", "ROWS", "KB", "EXEC P50", "P50", "P95", "P99", "MAX"));
+        List<Map.Entry<String, Metrics>> entries = new ArrayList<>(byStatement.entrySet());
+        // Where the time goes: biggest total first.
+        entries.sort(Collections.reverseOrder((a, b) -> Double.compare(
+                a.getValue().total.meanMillis() * a.getValue().total.count(),
+                b.getValue().total.meanMillis() * b.getValue().total.count())));
+        for (Map.Entry<String, Metrics> entry : entries) {
+            Metrics m = entry.getValue();
+            out.append(String.format("%-28s %8d %10d %10d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey(), m.total.count(), m.rows.sum(), m.bytes.sum() / 1024,
+                    m.execute.percentileMillis(50), m.total.percentileMillis(50), m.total.percentileMillis(95),
+                    m.total.percentileMillis(99), m.total.maxMillis()));
+        }
+        return out.toString();
+    }
+
+    void registerMetrics(MetricsRegistry registry) {
+        registry.register(this, "db_pool_acquire_seconds", "Time to get a connection from the pool.", "summary", samples -> {
+            LatencyHistogram acquire = acquireLatency;
+            for (String quantile : new String[]{"0.5", "0.99"}) {
+                samples.put(MetricsRegistry.labels("quantile", quantile), acquire.percentileMillis(100 * Double.parseDouble(quantile)) / 1000);
+            }
+            samples.put("_count", (double) acquire.count());
+            samples.put("_sum", acquire.sumMillis() / 1000);
+        });
+        registry.register(this, "db_query_seconds", "Execute + fetch time per statement type and table.", "summary", samples -> {
+            for (Map.Entry<String, Metrics> entry : byStatement.entrySet()) {
+                LatencyHistogram total = entry.getValue().total;
+                for (String quantile : new String[]{"0.5", "0.95", "0.99"}) {
+                    samples.put(MetricsRegistry.labels("statement", entry.getKey(), "quantile", quantile),
+                            total.percentileMillis(100 * Double.parseDouble(quantile)) / 1000);
+                }
+                samples.put("_count" + MetricsRegistry.labels("statement", entry.getKey()), (double) total.count());
+                samples.put("_sum" + MetricsRegistry.labels("statement", entry.getKey()), total.sumMillis() / 1000);
+            }
+        });
+        registry.register(this, "db_rows_total", "Rows fetched or affected per statement type and table.", "counter", samples -> {
+            for (Map.Entry<String, Metrics> entry : byStatement.entrySet()) {
+                samples.put(MetricsRegistry.labels("statement", entry.getKey()), (double) entry.getValue().rows.sum());
+            }
+        });
+        registry.register(this, "db_fetched_bytes_total", "Approximate bytes read from result sets.", "counter", samples -> {
+            for (Map.Entry<String, Metrics> entry : byStatement.entrySet()) {
+                samples.put(MetricsRegistry.labels("statement", entry.getKey()), (double) entry.getValue().bytes.sum());
+            }
+        });
+        registry.gauge(this, "db_slow_queries", "Statements at or above the slow-query threshold since the last reset.", slowQueries::sum);
+    }
+
+    // "SELECT EMP", "UPDATE DEPT", or just the verb when no table can be found.
+    static String statementKey(String sql) {
+        if (sql == null) return "UNKNOWN";
+        Matcher matcher = STATEMENT_TARGET.matcher(sql);
+        if (matcher.find()) {
+            return matcher.group(1).toUpperCase() + " " + matcher.group(2).toUpperCase();
+        }
+        matcher = FIRST_WORD.matcher(sql);
+        return matcher.find() ? matcher.group(1).toUpperCase() : "UNKNOWN";
+    }
+
+    private void record(String sql, long executeNanos, long fetchNanos, long rows, long bytes) {
+        Metrics metrics = byStatement.computeIfAbsent(statementKey(sql), key -> new Metrics());
+        long totalNanos = executeNanos + fetchNanos;
+        metrics.execute.recordNanos(executeNanos);
+        if (fetchNanos > 0) metrics.fetch.recordNanos(fetchNanos);
+        metrics.total.recordNanos(totalNanos);
+        metrics.rows.add(rows);
+        metrics.bytes.add(bytes);
+        if (totalNanos >= slowThresholdNanos) {
+            slowQueries.increment();
+            logSlowQuery(sql, executeNanos, fetchNanos, rows);
+        }
+    }
+
+    private void logSlowQuery(String sql, long executeNanos, long fetchNanos, long rows) {
+        String line = String.format("%s %.1f ms (execute %.1f ms, fetch %.1f ms, %d rows) %s%n", LocalDateTime.now(),
+                (executeNanos + fetchNanos) / 1e6, executeNanos / 1e6, fetchNanos / 1e6, rows, String.valueOf(sql).replaceAll("\\s+", " ").trim());
+        slowLogWriter.execute(() -> {
+            try {
+                Files.write(slowLogFile, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Could not write slow-query log '" + slowLogFile + "': " + e.getMessage());
+            }
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = QueryStats.invoke(target, method, args);
+            if (result instanceof Statement && !(result instanceof CallableStatement)) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                Class<?> type = result instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+                return Proxy.newProxyInstance(QueryStats.class.getClassLoader(), new Class<?>[]{type},
+                        new StatementHandler((Statement) result, sql));
+            }
+            return result;
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String preparedSql; // null for plain statements
+        private String pendingSql;        // execute() that produced a result set not yet fetched
+        private long pendingExecuteNanos;
+        private String lastSql;           // statement whose further results getMoreResults() steps through
+
+        StatementHandler(Statement target, String preparedSql) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getMoreResults")) {
+                return moreResults(method, args);
+            }
+            if (!name.startsWith("execute") && !name.equals("getResultSet")) {
+                return QueryStats.invoke(target, method, args);
+            }
+            if (name.equals("getResultSet")) {
+                ResultSet rs = (ResultSet) QueryStats.invoke(target, method, args);
+                String sql = pendingSql;
+                pendingSql = null;
+                return rs == null || sql == null ? rs : wrap(rs, sql, pendingExecuteNanos);
+            }
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            lastSql = sql;
+            long start = System.nanoTime();
+            Object result = QueryStats.invoke(target, method, args);
+            long executeNanos = System.nanoTime() - start;
+            if (result instanceof ResultSet) {
+                return wrap((ResultSet) result, sql, executeNanos);
+            }
+            if (result instanceof int[] || result instanceof long[]) {
+                long rows = 0;
+                int length = java.lang.reflect.Array.getLength(result);
+                for (int i = 0; i < length; i++) {
+                    rows += Math.max(0, ((Number) java.lang.reflect.Array.get(result, i)).longValue());
+                }
+                record(sql, executeNanos, 0, rows, 0);
+            } else if (Boolean.TRUE.equals(result)) {
+                pendingSql = sql;
+                pendingExecuteNanos = executeNanos;
+            } else {
+                long rows = result instanceof Number ? ((Number) result).longValue() : target.getUpdateCount();
+                record(sql, executeNanos, 0, Math.max(0, rows), 0);
+            }
+            return result;
+        }
+
+        // The next result of a multi-statement script: the time to get it counts as its execute time, and it is
+        // recorded like a result of execute(). A result set that was skipped without being read counts as empty.
+        private Object moreResults(Method method, Object[] args) throws Throwable {
+            if (pendingSql != null) {
+                record(pendingSql, pendingExecuteNanos, 0, 0, 0);
+                pendingSql = null;
+            }
+            long start = System.nanoTime();
+            Object result = QueryStats.invoke(target, method, args);
+            long executeNanos = System.nanoTime() - start;
+            if (lastSql == null) return result;
+            if (Boolean.TRUE.equals(result)) {
+                pendingSql = lastSql;
+                pendingExecuteNanos = executeNanos;
+            } else {
+                long rows = target.getUpdateCount();
+                if (rows != -1) record(lastSql, executeNanos, 0, rows, 0); // -1: no more results
+            }
+            return result;
+        }
+
+        private ResultSet wrap(ResultSet rs, String sql, long executeNanos) {
+            return (ResultSet) Proxy.newProxyInstance(QueryStats.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    new ResultSetHandler(rs, sql, executeNanos));
+        }
+    }
+
+    // Fetch time is the time spent in next(), which is where a streaming result actually reads from the server.
+    private class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final String sql;
+        private final long executeNanos;
+        private long fetchNanos;
+        private long rows;
+        private long bytes;
+        private boolean recorded;
+
+        ResultSetHandler(ResultSet target, String sql, long executeNanos) {
+            this.target = target;
+            this.sql = sql;
+            this.executeNanos = executeNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                long start = System.nanoTime();
+                Object result = QueryStats.invoke(target, method, args);
+                fetchNanos += System.nanoTime() - start;
+                if (Boolean.TRUE.equals(result)) {
+                    rows++;
+                } else {
+                    finish();
+                }
+                return result;
+            }
+            if (name.equals("close")) {
+                finish();
+                return QueryStats.invoke(target, method, args);
+            }
+            Object result = QueryStats.invoke(target, method, args);
+            if (name.startsWith("get") && args != null && args.length == 1) {
+                if (result instanceof String) {
+                    bytes += ((String) result).length();
+                } else if (result instanceof byte[]) {
+                    bytes += ((byte[]) result).length;
+                } else if (result instanceof Number || result instanceof java.util.Date) {
+                    bytes += 8;
+                }
+            }
+            return result;
+        }
+
+        private void finish() {
+            if (!recorded) {
+                recorded = true;
+                record(sql, executeNanos, fetchNanos, rows, bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+/**
+ * Checkbox selection for the data grid, stored as one bit per row index.
+ * While attached to the grid's item list it follows inserts, removals and sorts,
+ * so a bit always refers to the row currently at that index. In "all matching" mode the selection
+ * stands for every row the page query matches, on this page and the others; unchecking a row leaves it.
+ */
+class RowSelectionModel {
+    private final BitSet bits = new BitSet();
+    private ObservableList<?> rows;
+    private boolean allMatching;
+
+    private final ListChangeListener<Object> rowTracker = change -> {
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                BitSet permuted = new BitSet();
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    if (bits.get(i)) permuted.set(change.getPermutation(i));
+                }
+                bits.clear(change.getFrom(), change.getTo());
+                bits.or(permuted);
+            } else if (change.wasReplaced() && change.getRemovedSize() == change.getAddedSize()) {
+                // Rows replaced in place keep their position, and with it their selection.
+            } else {
+                if (change.wasRemoved()) shiftDown(change.getFrom(), change.getRemovedSize());
+                if (change.wasAdded()) shiftUp(change.getFrom(), change.getAddedSize());
+            }
+        }
+    };
+
+    void attach(ObservableList<?> rows) {
+        detach();
+        this.rows = rows;
+        rows.addListener(rowTracker);
+    }
+
+    void detach() {
+        if (rows != null) {
+            rows.removeListener(rowTracker);
+            rows = null;
+        }
+        bits.clear();
+        allMatching = false;
+    }
+
+    boolean isSelected(int index) {
+        return bits.get(index);
+    }
+
+    // Like selectAll and selectRange, a no-op while detached: there are no table rows to select.
+    void setSelected(int index, boolean selected) {
+        if (rows == null) return;
+        bits.set(index, selected);
+        if (!selected) allMatching = false;
+    }
+
+    void selectAll() {
+        if (rows != null) bits.set(0, rows.size());
+    }
+
+    void selectAllMatching() {
+        if (rows == null) return;
+        selectAll();
+        allMatching = true;
+    }
+
+    boolean isAllMatching() {
+        return allMatching;
+    }
+
+    // Inclusive range, in either direction.
+    void selectRange(int from, int to) {
+        if (rows != null) bits.set(Math.min(from, to), Math.max(from, to) + 1);
+    }
+
+    void clear() {
+        bits.clear();
+        allMatching = false;
+    }
+
+    int selectedCount() {
+        return bits.cardinality();
+    }
+
+    IntStream selectedIndices() {
+        return bits.stream();
+    }
+
+    private void shiftDown(int from, int count) {
+        BitSet tail = bits.get(from + count, Math.max(bits.length(), from + count));
+        bits.clear(from, Math.max(bits.length(), from));
+        tail.stream().forEach(i -> bits.set(from + i));
+    }
+
+    private void shiftUp(int from, int count) {
+        BitSet tail = bits.get(from, Math.max(bits.length(), from));
+        bits.clear(from, Math.max(bits.length(), from));
+        tail.stream().forEach(i -> bits.set(from + count + i));
+    }
+}
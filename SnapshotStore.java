@@ -0,0 +1,466 @@
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Read-through local copies of small reference tables (e.g. DEPT, SALGRADE) so browsing them needs no round
+ * trip and keeps working while MySQL is slow or down. Each copy is a memory-mapped columnar file: a page is
+ * filtered and sorted by reading only the columns involved, and only the rows on the page are decoded.
+ * <p>
+ * A refresh writes a new version (TABLE.&lt;version&gt;.snap) and switches to it; a file still mapped cannot be
+ * replaced on every platform, so old versions are deleted when possible and otherwise on the next start.
+ * Copies older than the max age are served while a background refresh runs; while a copy is missing or has been
+ * written through this app since it was taken, pages come from MySQL until its background refresh completes.
+ * Filters and sorting follow MySQL's defaults closely (prefix matches and ordering ignore case, numbers sort
+ * numerically, NULLs first) but not exactly. A file is mapped as one buffer, so tables whose copy would pass
+ * 2 GB are not snapshotted.
+ */
+class SnapshotStore implements AutoCloseable {
+    private static final int MAGIC = 0x46585350; // "FXSP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int NULL_LENGTH = -1;
+    private static final String SUFFIX = ".snap";
+
+    private final ConnectionPool pool;
+    private final Path directory;
+    private final Set<String> tables;     // upper-cased
+    private final long maxAgeMillis;
+    private final int maxRows;
+    private final int queryTimeoutSeconds;
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Set<String> loadedFromDisk = ConcurrentHashMap.newKeySet();
+    private final Set<String> stale = ConcurrentHashMap.newKeySet();      // written through this app since taken
+    private final Set<String> tooLarge = ConcurrentHashMap.newKeySet();   // over maxRows; always read from MySQL
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "db-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final MetricsRegistry.Counter hits =
+            MetricsRegistry.DEFAULT.counter("db_snapshot_hits_total", "Table pages served from a local snapshot.");
+    private final MetricsRegistry.Counter refreshes =
+            MetricsRegistry.DEFAULT.counter("db_snapshot_refreshes_total", "Snapshots re-read from the database.");
+    private final MetricsRegistry.Counter offlineHits =
+            MetricsRegistry.DEFAULT.counter("db_snapshot_offline_hits_total", "Pages served from a snapshot because the database failed.");
+
+    SnapshotStore(ConnectionPool pool, Path directory, Set<String> tables, long maxAgeMillis, int maxRows, int queryTimeoutSeconds) {
+        this.pool = pool;
+        this.directory = directory;
+        this.tables = tables;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxRows = maxRows;
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+    }
+
+    boolean covers(String tableName) {
+        String key = tableName.toUpperCase();
+        return tables.contains(key) && !tooLarge.contains(key);
+    }
+
+    // The page from the snapshot, or null when the caller should read MySQL instead because the copy is missing
+    // or was written to. Either way it is refreshed in the background, so no page waits for a whole-table read.
+    DatabaseHelper.TableData getPage(DatabaseHelper.TableQuery query) throws SQLException {
+        String key = query.tableName.toUpperCase();
+        Snapshot snapshot = current(key);
+        if (snapshot == null || stale.contains(key)) {
+            refreshInBackground(query.tableName);
+            return null;
+        }
+        if (System.currentTimeMillis() - snapshot.refreshedAt > maxAgeMillis) {
+            refreshInBackground(query.tableName);
+        }
+        hits.increment();
+        return snapshot.page(query);
+    }
+
+    // The page from whatever copy exists, however old, for when reading MySQL failed; null if there is none.
+    DatabaseHelper.TableData getOfflinePage(DatabaseHelper.TableQuery query) throws SQLException {
+        Snapshot snapshot = current(query.tableName.toUpperCase());
+        if (snapshot == null) return null;
+        offlineHits.increment();
+        return snapshot.page(query);
+    }
+
+    void invalidate(String tableName) {
+        String key = tableName.toUpperCase();
+        if (tables.contains(key)) stale.add(key);
+    }
+
+    void invalidateAll() {
+        stale.addAll(tables);
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    private void refreshInBackground(String tableName) {
+        String key = tableName.toUpperCase();
+        if (!refreshing.add(key)) return;
+        refresher.execute(() -> {
+            try {
+                refresh(tableName);
+            } catch (SQLException | IOException e) {
+                // keep serving the old copy, or MySQL; the next read that needs a refresh tries again
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    private Snapshot current(String key) {
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot == null && loadedFromDisk.add(key)) {
+            snapshot = loadLatest(key);
+            if (snapshot != null) snapshots.putIfAbsent(key, snapshot);
+        }
+        return snapshot;
+    }
+
+    // Reads the whole table and maps a new version of its file, unless the content is unchanged. The query uses
+    // the table name as the caller wrote it, which matters on servers with case-sensitive table names;
+    // the upper-cased key only names the map entries and files.
+    private synchronized Snapshot refresh(String tableName) throws SQLException, IOException {
+        String key = tableName.toUpperCase();
+        stale.remove(key); // a write during the read marks it stale again
+        List<String> headers = new ArrayList<>();
+        List<String[]> rows = new ArrayList<>();
+        try (ConnectionPool.PooledConnection conn = pool.acquire();
+             Statement stmt = conn.connection().createStatement()) {
+            stmt.setQueryTimeout(queryTimeoutSeconds);
+            stmt.setMaxRows(maxRows + 1);
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName)) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                for (int c = 1; c <= columnCount; c++) {
+                    headers.add(metaData.getColumnName(c));
+                }
+                while (rs.next()) {
+                    if (rows.size() == maxRows) {
+                        tooLarge.add(key);
+                        return null;
+                    }
+                    String[] row = new String[columnCount];
+                    for (int c = 1; c <= columnCount; c++) {
+                        row[c - 1] = rs.getString(c);
+                    }
+                    rows.add(row);
+                }
+            }
+        } catch (SQLException e) {
+            stale.add(key);
+            throw e;
+        }
+        refreshes.increment();
+        long checksum = checksum(headers, rows);
+        long now = System.currentTimeMillis();
+        Snapshot previous = current(key);
+        if (previous != null && previous.checksum == checksum) {
+            Snapshot touched = previous.refreshedAt(now); // same content: no need to rewrite the file
+            snapshots.put(key, touched);
+            return touched;
+        }
+        long version = previous == null ? 1 : previous.version + 1;
+        Path file = directory.resolve(key + "." + version + SUFFIX);
+        if (!write(file, version, now, checksum, headers, rows)) {
+            tooLarge.add(key);
+            return null;
+        }
+        Snapshot snapshot = map(file);
+        snapshots.put(key, snapshot);
+        if (previous != null) {
+            deleteQuietly(previous.file);
+        }
+        return snapshot;
+    }
+
+    private static long checksum(List<String> headers, List<String[]> rows) {
+        CRC32 crc = new CRC32();
+        for (String header : headers) {
+            crc.update(header.getBytes(StandardCharsets.UTF_8));
+            crc.update(0);
+        }
+        for (String[] row : rows) {
+            for (String cell : row) {
+                if (cell == null) {
+                    crc.update(1);
+                } else {
+                    crc.update(cell.getBytes(StandardCharsets.UTF_8));
+                }
+                crc.update(0);
+            }
+        }
+        return crc.getValue();
+    }
+
+    // Layout: header, column names, each column's section offset, then per column the value offsets,
+    // the value lengths (NULL_LENGTH for NULL) and the UTF-8 bytes of its values. Writes nothing and returns
+    // false when the file would not fit in one mapped buffer.
+    private boolean write(Path file, long version, long refreshedAt, long checksum, List<String> headers, List<String[]> rows)
+            throws IOException {
+        int rowCount = rows.size();
+        int columnCount = headers.size();
+        List<byte[]> names = new ArrayList<>();
+        int headerSize = 2 * Integer.BYTES + 3 * Long.BYTES + 2 * Integer.BYTES;
+        for (String header : headers) {
+            byte[] name = header.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            headerSize += Integer.BYTES + name.length;
+        }
+        headerSize += columnCount * Long.BYTES;
+
+        List<ByteBuffer> sections = new ArrayList<>();
+        long fileSize = headerSize;
+        for (int c = 0; c < columnCount; c++) {
+            byte[][] values = new byte[rowCount][];
+            long blobSize = 0;
+            for (int r = 0; r < rowCount; r++) {
+                String cell = rows.get(r)[c];
+                values[r] = cell == null ? null : cell.getBytes(StandardCharsets.UTF_8);
+                blobSize += values[r] == null ? 0 : values[r].length;
+            }
+            long sectionSize = 2L * Integer.BYTES * rowCount + blobSize;
+            fileSize += sectionSize;
+            if (fileSize > Integer.MAX_VALUE) {
+                return false;
+            }
+            ByteBuffer section = ByteBuffer.allocate((int) sectionSize);
+            int offset = 0;
+            for (int r = 0; r < rowCount; r++) {
+                section.putInt(offset);
+                offset += values[r] == null ? 0 : values[r].length;
+            }
+            for (int r = 0; r < rowCount; r++) {
+                section.putInt(values[r] == null ? NULL_LENGTH : values[r].length);
+            }
+            for (byte[] value : values) {
+                if (value != null) section.put(value);
+            }
+            section.flip();
+            sections.add(section);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(version).putLong(refreshedAt).putLong(checksum);
+        header.putInt(rowCount).putInt(columnCount);
+        for (byte[] name : names) {
+            header.putInt(name.length).put(name);
+        }
+        long position = headerSize;
+        for (ByteBuffer section : sections) {
+            header.putLong(position);
+            position += section.remaining();
+        }
+        header.flip();
+
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) channel.write(header);
+                for (ByteBuffer section : sections) {
+                    while (section.hasRemaining()) channel.write(section);
+                }
+                channel.force(false);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE); // readers never see a half-written version
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return true;
+    }
+
+    // The newest readable version on disk; older and unreadable versions are deleted.
+    private Snapshot loadLatest(String key) {
+        if (!Files.isDirectory(directory)) return null;
+        List<Path> versions = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, key + ".*" + SUFFIX)) {
+            files.forEach(versions::add);
+        } catch (IOException e) {
+            return null;
+        }
+        versions.sort(Comparator.comparingLong(SnapshotStore::versionOf).reversed());
+        Snapshot latest = null;
+        for (Path file : versions) {
+            if (latest == null) {
+                try {
+                    latest = map(file);
+                    continue;
+                } catch (IOException | RuntimeException e) {
+                    // corrupt or from another format version: fall through and delete it
+                }
+            }
+            deleteQuietly(file);
+        }
+        return latest;
+    }
+
+    private static long versionOf(Path file) {
+        String name = file.getFileName().toString();
+        String middle = name.substring(0, name.length() - SUFFIX.length());
+        try {
+            return Long.parseLong(middle.substring(middle.lastIndexOf('.') + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Snapshot map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // stays valid after close
+            return new Snapshot(file, buffer);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // still mapped (Windows); loadLatest removes it on the next start
+        }
+    }
+
+    private static class Snapshot {
+        final Path file;
+        final ByteBuffer buffer;
+        final long version;
+        final long refreshedAt;
+        final long checksum;
+        final int rowCount;
+        final List<String> headers = new ArrayList<>();
+        final long[] sections;
+
+        Snapshot(Path file, ByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                throw new IllegalStateException("Not a snapshot file: " + file);
+            }
+            version = buffer.getLong(8);
+            refreshedAt = buffer.getLong(16);
+            checksum = buffer.getLong(24);
+            rowCount = buffer.getInt(32);
+            int columnCount = buffer.getInt(36);
+            int position = 40;
+            for (int c = 0; c < columnCount; c++) {
+                byte[] name = new byte[buffer.getInt(position)];
+                buffer.get(position + Integer.BYTES, name);
+                headers.add(new String(name, StandardCharsets.UTF_8));
+                position += Integer.BYTES + name.length;
+            }
+            sections = new long[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                sections[c] = buffer.getLong(position);
+                position += Long.BYTES;
+            }
+        }
+
+        private Snapshot(Snapshot other, long refreshedAt) {
+            this.file = other.file;
+            this.buffer = other.buffer;
+            this.version = other.version;
+            this.refreshedAt = refreshedAt;
+            this.checksum = other.checksum;
+            this.rowCount = other.rowCount;
+            this.headers.addAll(other.headers);
+            this.sections = other.sections;
+        }
+
+        Snapshot refreshedAt(long time) {
+            return new Snapshot(this, time);
+        }
+
+        String cell(int column, int row) {
+            int section = Math.toIntExact(sections[column]); // write() keeps files within one buffer
+            int length = buffer.getInt(section + Integer.BYTES * (rowCount + row));
+            if (length == NULL_LENGTH) return null;
+            int offset = buffer.getInt(section + Integer.BYTES * row);
+            byte[] bytes = new byte[length];
+            buffer.get(section + 2 * Integer.BYTES * rowCount + offset, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int column(String name) throws SQLException {
+            for (int c = 0; c < headers.size(); c++) {
+                if (headers.get(c).equalsIgnoreCase(name)) return c;
+            }
+            throw new SQLException("Unknown column: " + name);
+        }
+
+        DatabaseHelper.TableData page(DatabaseHelper.TableQuery query) throws SQLException {
+            List<Integer> matching = new ArrayList<>();
+            for (int r = 0; r < rowCount; r++) {
+                matching.add(r);
+            }
+            for (Map.Entry<String, String> filter : query.filters.entrySet()) {
+                int column = column(filter.getKey());
+                String prefix = filter.getValue();
+                matching.removeIf(r -> {
+                    String value = cell(column, r);
+                    return value == null || !value.regionMatches(true, 0, prefix, 0, prefix.length());
+                });
+            }
+            if (query.sortColumn != null) {
+                int column = column(query.sortColumn);
+                String[] keys = new String[rowCount];
+                boolean numeric = true;
+                for (int r : matching) {
+                    keys[r] = cell(column, r);
+                    numeric &= keys[r] == null || isNumber(keys[r]);
+                }
+                Comparator<String> values = numeric
+                        ? Comparator.comparingDouble(Double::parseDouble)
+                        : String.CASE_INSENSITIVE_ORDER;
+                Comparator<Integer> order = Comparator.comparing(r -> keys[r], Comparator.nullsFirst(values));
+                matching.sort(query.ascending ? order : order.reversed());
+            }
+            ObservableList<ObservableList<String>> rows = FXCollections.observableArrayList();
+            int end = Math.min(matching.size(), query.offset + query.limit);
+            for (int i = query.offset; i < end; i++) {
+                String[] cells = new String[headers.size()];
+                for (int c = 0; c < cells.length; c++) {
+                    cells[c] = cell(c, matching.get(i));
+                }
+                rows.add(FXCollections.observableArrayList(Arrays.asList(cells)));
+            }
+            DatabaseHelper.TableData page = new DatabaseHelper.TableData(new ArrayList<>(headers), rows);
+            page.hasMoreRows = matching.size() > end;
+            return page;
+        }
+
+        private static boolean isNumber(String value) {
+            try {
+                Double.parseDouble(value);
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+}
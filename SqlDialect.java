@@ -0,0 +1,173 @@
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * What differs between the supported database engines; everything else goes through plain JDBC and SQL
+ * that all of them accept. Embedded engines are switched into their MySQL compatibility mode where they
+ * have one, so the MySQL-flavoured DDL in javafiles.txt and the Create Table tab keeps working.
+ */
+enum SqlDialect {
+    MYSQL {
+        // Server-side prepared statements pair with the per-connection statement cache in ConnectionPool;
+        // rewriteBatchedStatements turns an INSERT batch into multi-row INSERTs for the CSV importer;
+        // allowMultiQueries lets a whole SQL script go to the server in one round trip.
+        @Override
+        String connectionUrl(String url) {
+            StringBuilder full = new StringBuilder(url);
+            for (String option : new String[]{"useServerPrepStmts=true", "rewriteBatchedStatements=true",
+                    "allowMultiQueries=true", "createDatabaseIfNotExist=true"}) {
+                if (!url.contains(option.substring(0, option.indexOf('=') + 1))) {
+                    full.append(full.indexOf("?") < 0 ? '?' : '&').append(option);
+                }
+            }
+            return full.toString();
+        }
+
+        @Override
+        int streamingFetchSize() {
+            return Integer.MIN_VALUE; // Connector/J streams row by row only for this value
+        }
+
+        @Override
+        boolean supportsMultiStatementScripts() {
+            return true;
+        }
+
+        @Override
+        boolean backslashEscapes() {
+            return true; // unless the server runs with NO_BACKSLASH_ESCAPES
+        }
+
+        @Override
+        boolean hashComments() {
+            return true;
+        }
+
+        // QUOTE() maps NULL to the word NULL and escapes separators, so different rows rarely collide.
+        @Override
+        String rowHashExpression(List<String> columns) {
+            return columns.stream().map(column -> "QUOTE(" + column + ")")
+                    .collect(Collectors.joining(", ", "CRC32(CONCAT_WS(',', ", "))"));
+        }
+
+        @Override
+        String explainPrefix(boolean analyze) {
+            return analyze ? "EXPLAIN ANALYZE " : "EXPLAIN FORMAT=TREE ";
+        }
+
+        // A READ lock still lets other sessions read the table, but holds off writers until UNLOCK TABLES.
+        @Override
+        String readLockSql(String table) {
+            return "LOCK TABLES " + table + " READ";
+        }
+
+        @Override
+        String releaseReadLocksSql() {
+            return "UNLOCK TABLES";
+        }
+    },
+    H2 {
+        @Override
+        String connectionUrl(String url) {
+            return url.toUpperCase(Locale.ROOT).contains(";MODE=") ? url : url + ";MODE=MySQL";
+        }
+
+        @Override
+        String[] tableTypes() {
+            return new String[]{"TABLE", "BASE TABLE"}; // H2 2.x reports the SQL-standard name
+        }
+
+        @Override
+        String explainPrefix(boolean analyze) {
+            return analyze ? "EXPLAIN ANALYZE " : "EXPLAIN ";
+        }
+    },
+    HSQLDB {
+        @Override
+        String connectionUrl(String url) {
+            return url.contains("sql.syntax_mys") ? url : url + ";sql.syntax_mys=true";
+        }
+
+        @Override
+        String explainPrefix(boolean analyze) {
+            return analyze ? null : "EXPLAIN PLAN FOR ";
+        }
+    },
+    SQLITE {
+        @Override
+        String explainPrefix(boolean analyze) {
+            return analyze ? null : "EXPLAIN QUERY PLAN ";
+        }
+
+        // No row locks; a write transaction that read first fails rather than write over a concurrent change.
+        @Override
+        String lockingReadSuffix() {
+            return "";
+        }
+    },
+    GENERIC;
+
+    static SqlDialect forUrl(String url) {
+        String lower = url.toLowerCase(Locale.ROOT);
+        if (lower.startsWith("jdbc:mysql:") || lower.startsWith("jdbc:mariadb:")) return MYSQL;
+        if (lower.startsWith("jdbc:h2:")) return H2;
+        if (lower.startsWith("jdbc:hsqldb:")) return HSQLDB;
+        if (lower.startsWith("jdbc:sqlite:")) return SQLITE;
+        return GENERIC;
+    }
+
+    // The configured URL plus the driver options this app relies on, unless the URL already sets them.
+    String connectionUrl(String url) {
+        return url;
+    }
+
+    // Fetch size that makes the driver stream a large result instead of buffering it.
+    int streamingFetchSize() {
+        return 1000;
+    }
+
+    // When false, scripts are split into statements here and sent one at a time.
+    boolean supportsMultiStatementScripts() {
+        return false;
+    }
+
+    // Whether a backslash escapes the next character inside a quoted string.
+    boolean backslashEscapes() {
+        return false;
+    }
+
+    // Whether # starts a comment that runs to the end of the line, like --.
+    boolean hashComments() {
+        return false;
+    }
+
+    // Server-side expression that changes when any column of a row does; null hashes fetched rows instead.
+    String rowHashExpression(List<String> columns) {
+        return null;
+    }
+
+    String[] tableTypes() {
+        return new String[]{"TABLE"};
+    }
+
+    // Prefix that turns a SELECT into its plan, or null when the engine cannot do it.
+    String explainPrefix(boolean analyze) {
+        return null;
+    }
+
+    // Turns a SELECT into a read that locks the rows it returns until the transaction ends.
+    String lockingReadSuffix() {
+        return " FOR UPDATE";
+    }
+
+    // Statement that keeps a table unchanged, yet readable from other connections, until
+    // releaseReadLocksSql runs on the same connection; null when the engine has no such lock.
+    String readLockSql(String table) {
+        return null;
+    }
+
+    String releaseReadLocksSql() {
+        return null;
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a fresh JVM takes to reach the main menu prompt, the calculator prompt and (with --gui)
+ * the first GUI window, with the JDK's default class-data archive and with an application archive (AppCDS).
+ * The archive is made by a training run that walks through the menu, the calculator, the console manager
+ * and optionally the GUI under -XX:ArchiveClassesAtExit, so later runs map those classes instead of
+ * loading and verifying them. Children inherit this JVM's class path and options (e.g. the JavaFX module path).
+ *
+ * <pre>
+ * java StartupBenchmark --runs=5 --archive=fxdb.jsa --retrain --gui
+ * java -XX:SharedArchiveFile=fxdb.jsa MainApplication      # use the archive day to day
+ * </pre>
+ */
+public class StartupBenchmark {
+    private static final long PROCESS_TIMEOUT_SECONDS = 60;
+
+    // A child run: input sent at start, the output that marks the moment measured, and input that then ends the run.
+    private static class Scenario {
+        final String name;
+        final String input;
+        final String marker;
+        final String exitInput;
+        final List<String> jvmOptions;
+
+        Scenario(String name, String input, String marker, String exitInput, String... jvmOptions) {
+            this.name = name;
+            this.input = input;
+            this.marker = marker;
+            this.exitInput = exitInput;
+            this.jvmOptions = Arrays.asList(jvmOptions);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            options.put(eq < 0 ? arg.replaceFirst("^--", "") : arg.substring(0, eq).replaceFirst("^--", ""), eq < 0 ? "" : arg.substring(eq + 1));
+        }
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        Path archive = Paths.get(options.getOrDefault("archive", "fxdb.jsa")).toAbsolutePath();
+        boolean gui = options.containsKey("gui");
+
+        List<Scenario> scenarios = new ArrayList<>();
+        scenarios.add(new Scenario("menu prompt", "", "Please choose an application to run (1-4): ", "4\n"));
+        scenarios.add(new Scenario("calculator prompt", "3\n", "Enter a mathematical expression: ", "exit\n4\n"));
+        if (gui) {
+            scenarios.add(new Scenario("first window", "1\n", "First window shown", "4\n", "-Dfxdb.exitAfterFirstWindow=true"));
+        }
+
+        for (String entry : System.getProperty("java.class.path").split(java.io.File.pathSeparator)) {
+            if (Files.isDirectory(Paths.get(entry))) {
+                // CDS only archives classes from JAR files; a class directory makes the training run fail.
+                System.err.println("Class path entry '" + entry + "' is a directory. Package the classes first, e.g.\n"
+                        + "  jar --create --file fxdb.jar --main-class MainApplication *.class\n"
+                        + "and run: java -cp fxdb.jar StartupBenchmark");
+                return;
+            }
+        }
+        if (options.containsKey("retrain") || !Files.exists(archive)) {
+            System.out.println("Training run, writing " + archive + "...");
+            String training = (gui ? "1\n" : "") + "3\n2*(3+4)\n1\n5\n2\nEXIT\n4\n";
+            List<String> command = javaCommand("-XX:ArchiveClassesAtExit=" + archive, "-Dfxdb.exitAfterFirstWindow=true");
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (Writer stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+                stdin.write(training);
+            }
+            process.getInputStream().transferTo(java.io.OutputStream.nullOutputStream());
+            if (!process.waitFor(PROCESS_TIMEOUT_SECONDS, TimeUnit.SECONDS) || !Files.exists(archive)) {
+                process.destroyForcibly();
+                System.err.println("Training run did not produce " + archive + "; this JVM may not support dynamic CDS archives.");
+                return;
+            }
+        }
+
+        System.out.printf("%n%-18s %16s %16s %9s%n", "median of " + runs, "default CDS ms", "AppCDS ms", "speedup");
+        for (Scenario scenario : scenarios) {
+            long[] baseline = new long[runs];
+            long[] withArchive = new long[runs];
+            for (int i = 0; i < runs; i++) { // interleaved so drift in machine load hits both sides alike
+                baseline[i] = timeToMarker(scenario, javaCommand(scenario.jvmOptions.toArray(new String[0])));
+                List<String> archived = new ArrayList<>(scenario.jvmOptions);
+                archived.add("-XX:SharedArchiveFile=" + archive);
+                withArchive[i] = timeToMarker(scenario, javaCommand(archived.toArray(new String[0])));
+            }
+            double before = median(baseline) / 1e6;
+            double after = median(withArchive) / 1e6;
+            System.out.printf("%-18s %16.1f %16.1f %8.2fx%n", scenario.name, before, after, before / after);
+        }
+    }
+
+    // java + inherited options + extra options + class path + MainApplication.
+    private static List<String> javaCommand(String... extraOptions) {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (option.startsWith("-XX:SharedArchiveFile") || option.startsWith("-XX:ArchiveClassesAtExit")
+                    || option.startsWith("-Xshare") || option.startsWith("-agentlib") || option.startsWith("-javaagent")) {
+                continue;
+            }
+            command.add(option);
+        }
+        command.addAll(Arrays.asList(extraOptions));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("MainApplication");
+        return command;
+    }
+
+    // Nanoseconds from starting the process until its output contains the scenario's marker.
+    private static long timeToMarker(Scenario scenario, List<String> command) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (Writer stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+             Reader stdout = new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)) {
+            stdin.write(scenario.input);
+            stdin.flush();
+            StringBuilder seen = new StringBuilder();
+            long elapsed = -1;
+            int c;
+            while ((c = stdout.read()) != -1) {
+                seen.append((char) c);
+                int from = seen.length() - scenario.marker.length();
+                if (from >= 0 && seen.indexOf(scenario.marker, from) == from) {
+                    elapsed = System.nanoTime() - start;
+                    break;
+                }
+            }
+            if (elapsed < 0) {
+                String tail = seen.substring(Math.max(0, seen.length() - 500));
+                throw new IOException("'" + scenario.name + "' never printed \"" + scenario.marker + "\". Output ended with:\n" + tail);
+            }
+            stdin.write(scenario.exitInput);
+            stdin.flush();
+            while (stdout.read() != -1) {
+                // drain so the child never blocks on a full pipe
+            }
+            return elapsed;
+        } finally {
+            if (!process.waitFor(PROCESS_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
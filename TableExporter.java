@@ -0,0 +1,275 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams tables and query results to CSV (optionally gzip-compressed) with constant memory.
+ * Tables with an integer primary key are split into key ranges that are exported concurrently
+ * over pooled connections into part files, which are then concatenated. Gzip parts are written
+ * as separate gzip members, and a concatenation of members is itself a valid gzip file.
+ * A failed export leaves neither part files nor a partial target behind.
+ */
+class TableExporter {
+    // Makes the driver stream rows instead of buffering the whole result (Integer.MIN_VALUE on MySQL).
+    static final int STREAMING_FETCH_SIZE = DatabaseConfig.get().dialect.streamingFetchSize();
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final ConnectionPool pool;
+
+    TableExporter(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    long exportQuery(String sql, Path target, boolean gzip) throws SQLException, IOException {
+        try (ConnectionPool.PooledConnection conn = pool.acquire()) {
+            return exportQuery(conn.connection(), sql, target, gzip);
+        }
+    }
+
+    // Single forward-only stream; also used by the console manager with its own connection.
+    static long exportQuery(Connection connection, String sql, Path target, boolean gzip) throws SQLException, IOException {
+        return exportQuery(connection, sql, target, gzip, null);
+    }
+
+    // started (if given) receives the statement before it runs, so the caller can cancel it.
+    static long exportQuery(Connection connection, String sql, Path target, boolean gzip, Consumer<Statement> started)
+            throws SQLException, IOException {
+        try (Statement stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(STREAMING_FETCH_SIZE);
+            if (started != null) started.accept(stmt);
+            boolean complete = false;
+            try (ResultSet rs = stmt.executeQuery(sql); Writer out = openWriter(target, gzip)) {
+                writeHeader(out, rs.getMetaData());
+                long rows = writeRows(out, rs);
+                complete = true;
+                return rows;
+            } finally {
+                if (!complete) deleteQuietly(target);
+            }
+        }
+    }
+
+    long exportTable(String tableName, String pkColumn, Path target, int parallelism, boolean gzip,
+                     DatabaseHelper.ProgressListener progress) throws SQLException, IOException {
+        // The parts read over connections of their own, so only a read lock held for the whole export gives
+        // them one consistent view of the table. Where the dialect has none, one stream is the consistent way.
+        String readLock = DatabaseConfig.get().dialect.readLockSql(tableName);
+        if (parallelism < 3 || readLock == null) {
+            long rows = exportQuery("SELECT * FROM " + tableName, target, gzip);
+            if (progress != null) progress.onProgress(1, 1);
+            return rows;
+        }
+
+        try (ConnectionPool.PooledConnection conn = pool.acquire()) {
+            Connection lockConnection = conn.connection();
+            try (Statement stmt = lockConnection.createStatement()) {
+                stmt.execute(readLock);
+            }
+            try {
+                long[] bounds = integerKeyBounds(lockConnection, tableName, pkColumn);
+                if (bounds == null) {
+                    long rows = exportQuery(lockConnection, "SELECT * FROM " + tableName, target, gzip);
+                    if (progress != null) progress.onProgress(1, 1);
+                    return rows;
+                }
+                // The lock connection is one of the parallelism connections.
+                return exportRanges(lockConnection, tableName, pkColumn, bounds[0], bounds[1], target,
+                        parallelism - 1, gzip, progress);
+            } finally {
+                try (Statement stmt = lockConnection.createStatement()) {
+                    stmt.execute(DatabaseConfig.get().dialect.releaseReadLocksSql());
+                } catch (SQLException e) {
+                    conn.discardOnRelease(); // never hand a connection that still holds the lock to the next caller
+                }
+            }
+        }
+    }
+
+    private long exportRanges(Connection lockConnection, String tableName, String pkColumn, long min, long max,
+                              Path target, int parallelism, boolean gzip, DatabaseHelper.ProgressListener progress)
+            throws SQLException, IOException {
+        // Ranges are inclusive and max - min is taken as unsigned, so keys up to Long.MAX_VALUE and spans
+        // wider than Long.MAX_VALUE neither overflow nor wrap. The step is rounded up, and the part count
+        // then recomputed, so that every part starts at or below max.
+        long span = max - min;
+        int parts = Long.compareUnsigned(span, parallelism - 1) < 0 ? (int) span + 1 : parallelism;
+        long step = Long.divideUnsigned(span, parts) + 1;
+        parts = (int) Long.divideUnsigned(span, step) + 1;
+        int partCount = parts;
+        String rangeSql = "SELECT * FROM " + tableName + " WHERE " + pkColumn + " >= ? AND " + pkColumn + " <= ?";
+        List<Path> partFiles = new ArrayList<>();
+        Queue<Statement> running = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(parts);
+        boolean complete = false;
+        try {
+            AtomicInteger finished = new AtomicInteger();
+            List<Future<Long>> results = new ArrayList<>();
+            for (int part = 0; part < parts; part++) {
+                long from = min + part * step;
+                long to = part == parts - 1 ? max : from + (step - 1);
+                Path partFile = target.resolveSibling(target.getFileName() + ".part" + part);
+                partFiles.add(partFile);
+                results.add(executor.submit(() -> {
+                    long rows = exportRange(rangeSql, from, to, partFile, gzip, running);
+                    if (progress != null) progress.onProgress(finished.incrementAndGet(), partCount);
+                    return rows;
+                }));
+            }
+            long total = 0;
+            for (Future<Long> result : results) {
+                total += result.get();
+            }
+            writeHeaderFile(lockConnection, tableName, target, gzip);
+            appendParts(target, partFiles);
+            complete = true;
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export of '" + tableName + "' was interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Export of '" + tableName + "' failed: " + cause.getMessage(), cause);
+        } finally {
+            if (!complete) {
+                // Stop the other parts before removing their files, or a late one could recreate its part.
+                for (Statement stmt : running) {
+                    try {
+                        stmt.cancel();
+                    } catch (SQLException ignored) {
+                    }
+                }
+            }
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Path partFile : partFiles) {
+                deleteQuietly(partFile);
+            }
+            if (!complete) deleteQuietly(target);
+        }
+    }
+
+    private long exportRange(String rangeSql, long from, long to, Path partFile, boolean gzip, Queue<Statement> running)
+            throws SQLException, IOException {
+        try (ConnectionPool.PooledConnection conn = pool.acquire();
+             PreparedStatement pstmt = conn.connection().prepareStatement(rangeSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(STREAMING_FETCH_SIZE);
+            pstmt.setLong(1, from);
+            pstmt.setLong(2, to);
+            running.add(pstmt);
+            try (ResultSet rs = pstmt.executeQuery(); Writer out = openWriter(partFile, gzip)) {
+                return writeRows(out, rs);
+            } catch (SQLException e) {
+                conn.discardOnRelease(); // may have been cancelled
+                throw e;
+            } finally {
+                running.remove(pstmt);
+            }
+        }
+    }
+
+    // Returns {min, max} of an integer key, or null when the key cannot be range-split.
+    private static long[] integerKeyBounds(Connection connection, String tableName, String pkColumn) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(" + pkColumn + "), MAX(" + pkColumn + ") FROM " + tableName)) {
+            int type = rs.getMetaData().getColumnType(1);
+            boolean integral = type == Types.INTEGER || type == Types.BIGINT || type == Types.SMALLINT || type == Types.TINYINT;
+            if (!integral || !rs.next() || rs.getObject(1) == null) {
+                return null;
+            }
+            return new long[]{rs.getLong(1), rs.getLong(2)};
+        }
+    }
+
+    private static void writeHeaderFile(Connection connection, String tableName, Path target, boolean gzip)
+            throws SQLException, IOException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName + " WHERE 1 = 0");
+             Writer out = openWriter(target, gzip)) {
+            writeHeader(out, rs.getMetaData());
+        }
+    }
+
+    private static void appendParts(Path target, List<Path> partFiles) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (Path partFile : partFiles) {
+                try (FileChannel in = FileChannel.open(partFile, StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // the export error is the one worth reporting
+        }
+    }
+
+    private static Writer openWriter(Path path, boolean gzip) throws IOException {
+        OutputStream stream = Files.newOutputStream(path);
+        if (gzip) {
+            stream = new GZIPOutputStream(stream, WRITE_BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+    }
+
+    private static void writeHeader(Writer out, ResultSetMetaData metaData) throws SQLException, IOException {
+        String[] names = new String[metaData.getColumnCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = metaData.getColumnName(i + 1);
+        }
+        Csv.writeRow(out, names);
+    }
+
+    private static long writeRows(Writer out, ResultSet rs) throws SQLException, IOException {
+        int columnCount = rs.getMetaData().getColumnCount();
+        String[] values = new String[columnCount];
+        long rows = 0;
+        while (rs.next()) {
+            for (int i = 0; i < columnCount; i++) {
+                values[i] = rs.getString(i + 1);
+            }
+            Csv.writeRow(out, values);
+            rows++;
+        }
+        return rows;
+    }
+}
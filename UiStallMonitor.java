@@ -0,0 +1,50 @@
+import javafx.animation.AnimationTimer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the gaps between JavaFX pulses. The toolkit pulses about 60 times a second while an
+ * AnimationTimer runs, so a longer gap means the application thread was busy with something else
+ * (a blocking query, a huge layout) and the window was frozen for that long.
+ * The price is that the timer itself keeps the toolkit pulsing at 60 Hz, so an idle window costs a
+ * steady trickle of CPU (a pulse with nothing dirty is cheap, but never free). GuiHost therefore runs
+ * it only while at least one window is open.
+ */
+class UiStallMonitor {
+    private static final long STALL_THRESHOLD_NANOS = 100_000_000L;
+
+    private final AtomicLong stalls = new AtomicLong();
+    private final AtomicLong stalledNanos = new AtomicLong();
+    private final AtomicLong maxStallNanos = new AtomicLong();
+    private final AnimationTimer timer;
+    private long lastPulse;
+
+    UiStallMonitor(MetricsRegistry registry) {
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                long gap = lastPulse == 0 ? 0 : now - lastPulse;
+                lastPulse = now;
+                if (gap >= STALL_THRESHOLD_NANOS) {
+                    stalls.incrementAndGet();
+                    stalledNanos.addAndGet(gap);
+                    maxStallNanos.accumulateAndGet(gap, Math::max);
+                }
+            }
+        };
+        registry.register("ui_thread_stalls_total", "Pulse gaps of 100 ms or more on the JavaFX thread.", "counter",
+                samples -> samples.put("", (double) stalls.get()));
+        registry.register("ui_thread_stall_seconds_total", "Total length of those gaps.", "counter",
+                samples -> samples.put("", stalledNanos.get() / 1e9));
+        registry.gauge("ui_thread_max_stall_seconds", "Longest single gap.", () -> maxStallNanos.get() / 1e9);
+    }
+
+    void start() {
+        lastPulse = 0;
+        timer.start();
+    }
+
+    void stop() {
+        timer.stop();
+    }
+}
@@ -2,6 +2,13 @@ import java.util.*;
 import java.util.NoSuchElementException;
 
 public class calculator {
+    private static final MetricsRegistry.Counter EVALUATIONS =
+            MetricsRegistry.DEFAULT.counter("calculator_evaluations_total", "Expressions evaluated by the calculator.");
+
+    static {
+        MetricsRegistry.DEFAULT.gauge("calculator_evaluations_per_second", "Calculator evaluations per second over the last minute.",
+                EVALUATIONS::ratePerSecond);
+    }
 
     private static int precedence(char op) {
         if (op == '+' || op == '-') return 1;
@@ -64,6 +71,7 @@ public class calculator {
     }
     
     private static double evaluateExpression(String expression, Collection<Double> even, Collection<Double> odd) {
+        EVALUATIONS.increment();
         even.clear();
         odd.clear();
         String expr = expression.replaceAll("\\s+", "")
@@ -134,6 +142,21 @@ public class calculator {
         return values.getLast();
     }
 
+    // Checked evaluation for callers without a console (the API server); bad input throws IllegalArgumentException.
+    static double evaluate(String expression) {
+        if (checkBalance(expression) != 0) {
+            throw new IllegalArgumentException("Unbalanced parentheses.");
+        }
+        if (!isValidExpression(expression)) {
+            throw new IllegalArgumentException("Invalid expression. Please check for misplaced operators or invalid characters.");
+        }
+        try {
+            return evaluateExpression(expression, new ArrayList<>(), new ArrayList<>());
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
     private static double arrayListMode(String expr, ArrayList<Double> even, ArrayList<Double> odd) {
         return evaluateExpression(expr, even, odd);
     }